@@ -0,0 +1,319 @@
+package org.wintrisstech.sudoku;
+
+/**
+ * Propagates singles in many puzzles at once. Most puzzles in bulk traffic
+ * are easy, and propagation alone solves them, so doing it for a batch of
+ * puzzles together saves calling a search engine for each one.
+ * <p>
+ * The puzzles, or <em>lanes</em>, are laid out as a structure of arrays:
+ * <code>values[s][i]</code> is space s of lane i. Every step of the
+ * propagation is a loop over the lanes with no branches that indexes all its
+ * arrays by the lane alone, so the JIT compiler can tell that the loads and
+ * stores don't overlap and turns the loop into SIMD instructions. A value d is
+ * stored as the bit <code>1 &lt;&lt; (d - 1)</code>, and 0 is an empty space.
+ *
+ * @author Erik
+ */
+class BatchPropagator {
+
+	// The mask of all values.
+	private static final int ALL = 0x1ff;
+
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+	private static final short[] UNITS = GEOMETRY.units;
+	private static final byte[] ROW = GEOMETRY.row;
+	private static final byte[] COLUMN = GEOMETRY.column;
+	private static final byte[] BOX = GEOMETRY.box;
+
+	private final int lanes;
+	// The value bit of each space, per lane.
+	private final int[][] values;
+	// The candidates of each space, per lane, 0 for filled spaces.
+	private final int[][] candidates;
+	// The values used in each unit, per lane.
+	private final int[][] used;
+	// The values, or candidates, seen once and twice in a unit, per lane.
+	private final int[] once;
+	private final int[] twice;
+	// Non-zero for lanes that have a contradiction.
+	private final int[] dead;
+
+	/**
+	 * Creates a propagator.
+	 *
+	 * @param lanes
+	 *            the number of puzzles in a batch
+	 */
+	BatchPropagator(int lanes) {
+		this.lanes = lanes;
+		values = new int[9 * 9][lanes];
+		candidates = new int[9 * 9][lanes];
+		used = new int[3 * 9][lanes];
+		once = new int[lanes];
+		twice = new int[lanes];
+		dead = new int[lanes];
+	}
+
+	/**
+	 * Gets the number of puzzles in a batch.
+	 *
+	 * @return the number of lanes
+	 */
+	int getLanes() {
+		return lanes;
+	}
+
+	/**
+	 * Loads a puzzle into a lane. A puzzle with a value out of range has no
+	 * solution, so its lane is a contradiction.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param puzzle
+	 *            the puzzle. A 0 represents an empty space. The puzzle is not
+	 *            modified.
+	 */
+	void load(int lane, int[][] puzzle) {
+		dead[lane] = 0;
+		for (int s = 0; s < 9 * 9; s++) {
+			int value = puzzle[ROW[s]][COLUMN[s]];
+			if (value < 0 || value > 9) {
+				dead[lane] = 1;
+				value = 0;
+			}
+			values[s][lane] = value == 0 ? 0 : 1 << (value - 1);
+		}
+	}
+
+	/**
+	 * Clears a lane, e.g., when a batch is not full.
+	 *
+	 * @param lane
+	 *            the lane
+	 */
+	void clear(int lane) {
+		for (int s = 0; s < 9 * 9; s++) {
+			values[s][lane] = 0;
+		}
+		dead[lane] = 0;
+	}
+
+	/**
+	 * Stores the values of a lane into a puzzle. Spaces that are empty in the
+	 * lane are left as they are in the puzzle.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @param puzzle
+	 *            the puzzle to write to
+	 */
+	void store(int lane, int[][] puzzle) {
+		for (int s = 0; s < 9 * 9; s++) {
+			if (values[s][lane] != 0) {
+				puzzle[ROW[s]][COLUMN[s]] = Integer.numberOfTrailingZeros(values[s][lane]) + 1;
+			}
+		}
+	}
+
+	/**
+	 * Tests whether propagation found a contradiction in a lane, i.e., that
+	 * the puzzle has no solution.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @return true if the puzzle in the lane has no solution
+	 */
+	boolean isContradiction(int lane) {
+		return dead[lane] != 0;
+	}
+
+	/**
+	 * Tests whether propagation solved a lane.
+	 *
+	 * @param lane
+	 *            the lane
+	 * @return true if every space of the lane is filled without contradiction
+	 */
+	boolean isSolved(int lane) {
+		if (dead[lane] != 0) {
+			return false;
+		}
+		for (int s = 0; s < 9 * 9; s++) {
+			if (values[s][lane] == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fills naked singles (spaces with one candidate) and hidden singles
+	 * (values with one place in a unit) in all lanes, until no lane changes.
+	 *
+	 * @return the number of rounds
+	 */
+	int propagate() {
+		int rounds = 0;
+		int changed;
+		do {
+			rounds++;
+			findUsedValues();
+			changed = fillNakedSingles();
+			changed |= fillHiddenSingles();
+		} while (changed != 0);
+		return rounds;
+	}
+
+	/**
+	 * Computes the values used in each unit, and marks lanes where a value is
+	 * used twice in a unit as dead.
+	 */
+	private void findUsedValues() {
+		int[] once = this.once, twice = this.twice, dead = this.dead;
+		for (int u = 0; u < 3 * 9; u++) {
+			int[] first = values[UNITS[u * 9]];
+			for (int i = 0; i < lanes; i++) {
+				once[i] = first[i];
+				twice[i] = 0;
+			}
+			for (int k = u * 9 + 1; k < u * 9 + 9; k++) {
+				int[] v = values[UNITS[k]];
+				for (int i = 0; i < lanes; i++) {
+					twice[i] |= once[i] & v[i];
+					once[i] |= v[i];
+				}
+			}
+			int[] unit = used[u];
+			for (int i = 0; i < lanes; i++) {
+				unit[i] = once[i];
+				dead[i] |= twice[i];
+			}
+		}
+	}
+
+	/**
+	 * Computes the candidates of the empty spaces and fills the spaces that
+	 * have one candidate. Marks lanes with a space without candidates as
+	 * dead.
+	 *
+	 * @return non-zero if a space was filled in some lane
+	 */
+	private int fillNakedSingles() {
+		int[] dead = this.dead;
+		int changed = 0;
+		for (int s = 0; s < 9 * 9; s++) {
+			int[] v = values[s];
+			int[] c = candidates[s];
+			int[] row = used[ROW[s]];
+			int[] column = used[9 + COLUMN[s]];
+			int[] box = used[18 + BOX[s]];
+			for (int i = 0; i < lanes; i++) {
+				int empty = (v[i] - 1) >> 31; // -1 if v[i] == 0, else 0
+				int free = ~(row[i] | column[i] | box[i]) & ALL & empty;
+				int none = (free - 1) >> 31; // -1 if free == 0, else 0
+				int single = ((free & (free - 1)) - 1) >> 31 & ~none;
+				c[i] = free;
+				v[i] |= free & single;
+				dead[i] |= empty & none & 1;
+				changed |= free & single;
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Fills the spaces that are the only place for a value in a unit. Uses
+	 * the candidates computed by fillNakedSingles(); a space filled there has
+	 * a single candidate, so it does not hide other values.
+	 *
+	 * @return non-zero if a space was filled in some lane
+	 */
+	private int fillHiddenSingles() {
+		int[] once = this.once, twice = this.twice;
+		int changed = 0;
+		for (int u = 0; u < 3 * 9; u++) {
+			int[] first = candidates[UNITS[u * 9]];
+			for (int i = 0; i < lanes; i++) {
+				once[i] = first[i];
+				twice[i] = 0;
+			}
+			for (int k = u * 9 + 1; k < u * 9 + 9; k++) {
+				int[] c = candidates[UNITS[k]];
+				for (int i = 0; i < lanes; i++) {
+					twice[i] |= once[i] & c[i];
+					once[i] |= c[i];
+				}
+			}
+			for (int k = u * 9; k < u * 9 + 9; k++) {
+				int[] v = values[UNITS[k]];
+				int[] c = candidates[UNITS[k]];
+				for (int i = 0; i < lanes; i++) {
+					int hidden = c[i] & once[i] & ~twice[i] & (v[i] - 1) >> 31;
+					int single = ((hidden & (hidden - 1)) - 1) >> 31;
+					v[i] |= hidden & single;
+					changed |= hidden & single;
+				}
+			}
+		}
+		return changed;
+	}
+
+	/**
+	 * Solves puzzles in batches: singles are propagated in all the puzzles
+	 * of a batch at once, and the puzzles that propagation neither solves nor
+	 * proves impossible are finished by a search engine, starting from the
+	 * spaces that propagation filled. Each puzzle is solved in place; a
+	 * puzzle without a solution is left as it was.
+	 *
+	 * @param puzzles
+	 *            the puzzles to solve
+	 * @param lanes
+	 *            the number of puzzles in a batch
+	 * @param engine
+	 *            the engine that finishes the puzzles that propagation does
+	 *            not
+	 * @return for each puzzle, true if, and only if, it has a solution
+	 */
+	static boolean[] solveAll(int[][][] puzzles, int lanes, SudokuEngine engine) {
+		BatchPropagator batch = new BatchPropagator(lanes);
+		boolean[] solved = new boolean[puzzles.length];
+		// The grid handed to the engine, so that a puzzle is only changed if
+		// the engine solves it.
+		int[][] scratch = new int[9][9];
+		for (int first = 0; first < puzzles.length; first += lanes) {
+			int n = Math.min(lanes, puzzles.length - first);
+			for (int i = 0; i < lanes; i++) {
+				if (i < n) {
+					batch.load(i, puzzles[first + i]);
+				} else {
+					batch.clear(i);
+				}
+			}
+			batch.propagate();
+			for (int i = 0; i < n; i++) {
+				int[][] puzzle = puzzles[first + i];
+				if (batch.isContradiction(i)) {
+					continue;
+				}
+				if (batch.isSolved(i)) {
+					batch.store(i, puzzle);
+					solved[first + i] = true;
+					continue;
+				}
+				// Hand the engine the spaces that propagation filled, so it
+				// doesn't search for them again.
+				for (int row = 0; row < 9; row++) {
+					System.arraycopy(puzzle[row], 0, scratch[row], 0, 9);
+				}
+				batch.store(i, scratch);
+				if (engine.solve(scratch)) {
+					for (int row = 0; row < 9; row++) {
+						System.arraycopy(scratch[row], 0, puzzle[row], 0, 9);
+					}
+					solved[first + i] = true;
+				}
+			}
+		}
+		return solved;
+	}
+}
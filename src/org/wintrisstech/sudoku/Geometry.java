@@ -0,0 +1,124 @@
+package org.wintrisstech.sudoku;
+
+/**
+ * Precomputed lookup tables for the geometry of a Sudoku grid, so that the
+ * solvers need no division or modulo in their inner loops.
+ * <p>
+ * The spaces of the grid are numbered 0 to <code>cells - 1</code>, row by
+ * row, so that space <code>row * size + column</code> is at (row, column).
+ * The units of the grid are the rows (numbered 0 to <code>size - 1</code>),
+ * the columns (numbered <code>size</code> to <code>2 * size - 1</code>) and
+ * the boxes (numbered <code>2 * size</code> to <code>3 * size - 1</code>).
+ * The peers of a space are the other spaces that share a unit with it.
+ * <p>
+ * The tables are flat arrays. They are shared by all solvers and must not be
+ * modified.
+ *
+ * @author Erik
+ */
+final class Geometry {
+
+	/**
+	 * The geometry of the standard 9x9 grid with 3x3 boxes.
+	 */
+	static final Geometry STANDARD = new Geometry(3);
+
+	// The width and height of a box.
+	final int boxSize;
+	// The width and height of the grid, i.e., the number of values.
+	final int size;
+	// The number of spaces in the grid.
+	final int cells;
+	// The number of peers of each space.
+	final int peerCount;
+	// The row, column and box of each space.
+	final byte[] row;
+	final byte[] column;
+	final byte[] box;
+	/*
+	 * The peers of each space: the peers of space s are peers[s * peerCount]
+	 * to peers[(s + 1) * peerCount - 1], first the row peers, then the column
+	 * peers, and then the remaining box peers.
+	 */
+	final short[] peers;
+	/*
+	 * The spaces of each unit: the spaces of unit u are units[u * size] to
+	 * units[(u + 1) * size - 1], in increasing order. So the spaces of a box
+	 * are listed row by row.
+	 */
+	final short[] units;
+
+	/**
+	 * Gets the geometry of a grid.
+	 *
+	 * @param boxSize
+	 *            the width and height of a box, 3 for a standard grid
+	 * @return the geometry of a grid with boxSize * boxSize rows and columns
+	 * @throws IllegalArgumentException
+	 *             if boxSize is less than 1 or greater than 11
+	 */
+	static Geometry of(int boxSize) throws IllegalArgumentException {
+		return boxSize == 3 ? STANDARD : new Geometry(boxSize);
+	}
+
+	private Geometry(int boxSize) {
+		if (boxSize < 1 || boxSize > 11) { // 11 * 11 rows still fit in a byte
+			throw new IllegalArgumentException("Illegal box size: " + boxSize);
+		}
+		this.boxSize = boxSize;
+		this.size = boxSize * boxSize;
+		this.cells = size * size;
+		this.peerCount = 3 * (size - 1) - 2 * (boxSize - 1);
+		row = new byte[cells];
+		column = new byte[cells];
+		box = new byte[cells];
+		for (int i = 0, s = 0; i < size; i++) {
+			for (int j = 0; j < size; j++, s++) {
+				row[s] = (byte) i;
+				column[s] = (byte) j;
+				box[s] = (byte) (i / boxSize * boxSize + j / boxSize);
+			}
+		}
+		units = new short[3 * size * size];
+		int[] boxFill = new int[size];
+		for (int s = 0; s < cells; s++) {
+			units[row[s] * size + column[s]] = (short) s;
+			units[(size + column[s]) * size + row[s]] = (short) s;
+			units[(2 * size + box[s]) * size + boxFill[box[s]]++] = (short) s;
+		}
+		peers = new short[cells * peerCount];
+		for (int s = 0; s < cells; s++) {
+			int p = s * peerCount;
+			for (int t = 0; t < cells; t++) {
+				if (t != s && row[t] == row[s]) {
+					peers[p++] = (short) t;
+				}
+			}
+			for (int t = 0; t < cells; t++) {
+				if (t != s && column[t] == column[s]) {
+					peers[p++] = (short) t;
+				}
+			}
+			for (int t = 0; t < cells; t++) {
+				if (box[t] == box[s] && row[t] != row[s]
+						&& column[t] != column[s]) {
+					peers[p++] = (short) t;
+				}
+			}
+			assert p == (s + 1) * peerCount;
+		}
+	}
+
+	/**
+	 * Gets the space at a row and column.
+	 *
+	 * @param row
+	 *            the row of the space
+	 * @param column
+	 *            the column of the space
+	 * @return the number of the space
+	 */
+	int cell(int row, int column) {
+		return row * size + column;
+	}
+}
@@ -0,0 +1,633 @@
+package org.wintrisstech.sudoku;
+
+/**
+ * A Sudoku puzzle solver that keeps the candidate values of each space and
+ * prunes them by logical inference at every node of a recursive search.
+ * <p>
+ * The candidates of the spaces are bit masks, where bit d - 1 is set if the
+ * value d is still possible. Every change to a mask is recorded on a trail,
+ * so backtracking is done by undoing the changes back to a mark on the trail
+ * instead of copying the masks.
+ * <p>
+ * How hard the solver works at each node is set by its {@link Level}. A
+ * higher level costs more per node, but may make the search tree a lot
+ * smaller.
+ *
+ * @author Erik
+ */
+class InferenceSolver implements SudokuEngine {
+
+	/**
+	 * The inference rules applied at each node of the search. Each level
+	 * includes the rules of the levels before it.
+	 */
+	enum Level {
+		/**
+		 * Naked singles (a space with one candidate) and hidden singles (a
+		 * value with one possible space in a unit).
+		 */
+		SINGLES,
+		/**
+		 * Locked candidates: when the places of a value in a box are all in one
+		 * row or column, it is removed from the rest of that row or column
+		 * (pointing), and when the places of a value in a row or column are
+		 * all in one box, it is removed from the rest of that box (claiming).
+		 */
+		LOCKED_CANDIDATES,
+		/**
+		 * Naked and hidden pairs and triples: n spaces of a unit that together
+		 * have n candidates, or n values that together have n places in a
+		 * unit.
+		 */
+		SUBSETS,
+		/**
+		 * X-Wings: when a value has the same two places in two rows, it is
+		 * removed from the rest of those two columns, and vice versa.
+		 */
+		FISH
+	}
+
+	// The mask of all values.
+	private static final int ALL = 0x1ff;
+
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+	private static final byte[] ROW = GEOMETRY.row;
+	private static final byte[] COLUMN = GEOMETRY.column;
+	private static final byte[] BOX = GEOMETRY.box;
+	private static final short[] PEERS = GEOMETRY.peers;
+	private static final int PEER_COUNT = GEOMETRY.peerCount;
+	private static final short[] UNITS = GEOMETRY.units;
+	// The first row, column and box in UNITS.
+	private static final int ROWS = 0;
+	private static final int COLUMNS = 9;
+	private static final int BOXES = 18;
+
+	private Level level;
+	// The candidates of each space.
+	private final int[] candidates = new int[9 * 9];
+	/*
+	 * The trail of changes to candidates. Each entry is space << 16 | old mask.
+	 * Each change removes at least one candidate, so the trail never holds
+	 * more than 9 * 9 * 9 entries.
+	 */
+	private final int[] trail = new int[9 * 9 * 9];
+	private int trailSize;
+	// The spaces that have become naked singles but whose value has not yet
+	// been removed from their peers.
+	private final int[] queue = new int[9 * 9];
+	private int queueSize;
+	// Set when a rule removes a candidate.
+	private boolean changed;
+	// Scratch space for the rules: the candidates or places in each part of a
+	// unit.
+	private final int[] parts = new int[9];
+	// The number of values tried in the search.
+	private long nodes;
+	// The search gives up when it has tried this many values.
+	private long nodeBudget = Long.MAX_VALUE;
+	// Set when the search gives up.
+	private boolean budgetExhausted;
+	// The number of decisions on the path to the current node.
+	private int depth;
+	// The trace of the search, or null when it is not traced.
+	private SearchTrace trace;
+
+	/**
+	 * Creates a solver that only uses singles.
+	 */
+	InferenceSolver() {
+		this(Level.SINGLES);
+	}
+
+	/**
+	 * Creates a solver.
+	 *
+	 * @param level
+	 *            the inference rules to apply at each node of the search
+	 */
+	InferenceSolver(Level level) {
+		this.level = level;
+	}
+
+	/**
+	 * Sets the inference rules to apply at each node of the search.
+	 *
+	 * @param level
+	 *            the inference level
+	 */
+	void setLevel(Level level) {
+		this.level = level;
+	}
+
+	/**
+	 * Sets the maximum number of values to try in a search. When the budget is
+	 * exhausted, solve() gives up and returns false.
+	 *
+	 * @param nodeBudget
+	 *            the maximum number of nodes
+	 * @see #isBudgetExhausted()
+	 */
+	void setNodeBudget(long nodeBudget) {
+		this.nodeBudget = nodeBudget;
+	}
+
+	/**
+	 * Sets the trace that records the events of the following searches.
+	 *
+	 * @param trace
+	 *            the trace, or null to stop tracing
+	 */
+	void setTrace(SearchTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Tests whether the last call to solve() gave up because it exhausted its
+	 * node budget. If so, it is not known whether the puzzle has a solution.
+	 *
+	 * @return true if the node budget was exhausted
+	 */
+	boolean isBudgetExhausted() {
+		return budgetExhausted;
+	}
+
+	@Override
+	public boolean solve(int[][] puzzle) {
+		nodes = 0;
+		budgetExhausted = false;
+		trailSize = 0;
+		queueSize = 0;
+		depth = 0;
+		int emptySpaces = 0;
+		for (int s = 0; s < candidates.length; s++) {
+			candidates[s] = ALL;
+		}
+		for (int s = 0; s < candidates.length; s++) {
+			int value = puzzle[ROW[s]][COLUMN[s]];
+			if (value == 0) {
+				emptySpaces++;
+			} else if (!assign(s, value)) {
+				return false;
+			}
+		}
+		if (trace != null) {
+			// The search doesn't depend on a seed.
+			trace.start(emptySpaces, 0);
+		}
+		if (!propagate() || !search()) {
+			return false;
+		}
+		for (int s = 0; s < candidates.length; s++) {
+			puzzle[ROW[s]][COLUMN[s]] = Integer.numberOfTrailingZeros(candidates[s]) + 1;
+		}
+		return true;
+	}
+
+	/**
+	 * Gets the number of values tried by the last call to solve().
+	 */
+	@Override
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Searches for a solution from the current candidates, which must be
+	 * propagated.
+	 * <p>
+	 * Post-condition: If a solution is found, the candidates hold it.
+	 * Otherwise, the candidates are in the same state as prior to the
+	 * invocation of this method.
+	 *
+	 * @return true if, and only if, a solution is found
+	 */
+	private boolean search() {
+		// Find a space with the least candidates.
+		int space = -1;
+		int fewest = 10;
+		for (int s = 0; s < candidates.length; s++) {
+			int n = Integer.bitCount(candidates[s]);
+			if (n > 1 && n < fewest) {
+				space = s;
+				fewest = n;
+				if (n == 2) {
+					break;
+				}
+			}
+		}
+		if (space < 0) { // every space has a single candidate
+			return true;
+		}
+		for (int mask = candidates[space]; mask != 0; mask &= mask - 1) {
+			int value = Integer.numberOfTrailingZeros(mask) + 1;
+			int mark = trailSize;
+			if (++nodes > nodeBudget) {
+				budgetExhausted = true;
+				return false;
+			}
+			if (trace != null) {
+				trace.decision(depth + 1, space, value);
+			}
+			depth++;
+			boolean found = assign(space, value) && propagate() && search();
+			depth--;
+			if (found) {
+				return true;
+			}
+			if (trace != null) {
+				trace.backtrack(depth + 1, space, value);
+			}
+			undo(mark);
+		}
+		return false;
+	}
+
+	/**
+	 * Removes all candidates of a space except one value. Unlike eliminate(),
+	 * this is a decision or a clue, so it is not traced as a propagation.
+	 *
+	 * @return false if the value is not a candidate of the space
+	 */
+	private boolean assign(int space, int value) {
+		int bit = 1 << (value - 1);
+		int old = candidates[space];
+		if ((old & bit) == 0) {
+			return false;
+		}
+		if (old != bit) {
+			trail[trailSize++] = space << 16 | old;
+			candidates[space] = bit;
+			changed = true;
+			queue[queueSize++] = space;
+		}
+		return true;
+	}
+
+	/**
+	 * Removes candidates from a space, recording the change on the trail. A
+	 * space that is left with a single candidate is queued.
+	 *
+	 * @param space
+	 *            the space
+	 * @param mask
+	 *            the candidates to remove
+	 * @return false if the space is left with no candidates
+	 */
+	private boolean eliminate(int space, int mask) {
+		int old = candidates[space];
+		if ((old & mask) == 0) {
+			return true;
+		}
+		int remaining = old & ~mask;
+		trail[trailSize++] = space << 16 | old;
+		candidates[space] = remaining;
+		changed = true;
+		if (remaining == 0) {
+			queueSize = 0;
+			return false;
+		}
+		if ((remaining & (remaining - 1)) == 0) {
+			queue[queueSize++] = space;
+			if (trace != null) {
+				trace.propagation(depth, space, Integer.numberOfTrailingZeros(remaining) + 1);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Undoes the changes to the candidates back to a mark on the trail.
+	 */
+	private void undo(int mark) {
+		while (trailSize > mark) {
+			int entry = trail[--trailSize];
+			candidates[entry >>> 16] = entry & 0xffff;
+		}
+		queueSize = 0;
+	}
+
+	/**
+	 * Applies the inference rules until none of them removes a candidate.
+	 *
+	 * @return false if a contradiction is found
+	 */
+	private boolean propagate() {
+		while (true) {
+			// Naked singles: remove the value of each queued space from its
+			// peers.
+			while (queueSize > 0) {
+				int space = queue[--queueSize];
+				int bit = candidates[space];
+				for (int p = space * PEER_COUNT, end = p + PEER_COUNT; p < end; p++) {
+					if (!eliminate(PEERS[p], bit)) {
+						return false;
+					}
+				}
+			}
+			changed = false;
+			if (!hiddenSingles()) {
+				return false;
+			}
+			if (changed) {
+				continue;
+			}
+			if (level.compareTo(Level.LOCKED_CANDIDATES) >= 0) {
+				if (!lockedCandidates()) {
+					return false;
+				}
+				if (changed) {
+					continue;
+				}
+			}
+			if (level.compareTo(Level.SUBSETS) >= 0) {
+				if (!subsets()) {
+					return false;
+				}
+				if (changed) {
+					continue;
+				}
+			}
+			if (level.compareTo(Level.FISH) >= 0) {
+				if (!xWings()) {
+					return false;
+				}
+				if (changed) {
+					continue;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * Assigns each value that has only one place in a unit to that place.
+	 *
+	 * @return false if a value has no place in a unit
+	 */
+	private boolean hiddenSingles() {
+		for (int u = 0; u < 3 * 9; u++) {
+			int once = 0, twice = 0;
+			for (int k = u * 9; k < u * 9 + 9; k++) {
+				int mask = candidates[UNITS[k]];
+				twice |= once & mask;
+				once |= mask;
+			}
+			if (once != ALL) {
+				queueSize = 0;
+				return false;
+			}
+			for (int hidden = once & ~twice; hidden != 0; hidden &= hidden - 1) {
+				int bit = hidden & -hidden;
+				for (int k = u * 9; k < u * 9 + 9; k++) {
+					int space = UNITS[k];
+					if ((candidates[space] & bit) != 0) {
+						eliminate(space, candidates[space] & ~bit);
+						break;
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the pointing and claiming rules of locked candidates.
+	 *
+	 * @return false if a contradiction is found
+	 */
+	private boolean lockedCandidates() {
+		for (int b = 0; b < 9; b++) {
+			int base = (BOXES + b) * 9;
+			for (int k = 0; k < 3; k++) {
+				// The spaces of a box are listed row by row.
+				int inRow = candidates[UNITS[base + 3 * k]]
+						| candidates[UNITS[base + 3 * k + 1]]
+						| candidates[UNITS[base + 3 * k + 2]];
+				int inColumn = candidates[UNITS[base + k]]
+						| candidates[UNITS[base + k + 3]]
+						| candidates[UNITS[base + k + 6]];
+				int otherRows = 0, otherColumns = 0;
+				for (int m = 0; m < 3; m++) {
+					if (m != k) {
+						otherRows |= candidates[UNITS[base + 3 * m]]
+								| candidates[UNITS[base + 3 * m + 1]]
+								| candidates[UNITS[base + 3 * m + 2]];
+						otherColumns |= candidates[UNITS[base + m]]
+								| candidates[UNITS[base + m + 3]]
+								| candidates[UNITS[base + m + 6]];
+					}
+				}
+				int space = UNITS[base + 4 * k]; // on the diagonal of the box
+				if (!eliminateOutside(ROWS + ROW[space], b, inRow & ~otherRows)
+						|| !eliminateOutside(COLUMNS + COLUMN[space], b,
+								inColumn & ~otherColumns)) {
+					return false;
+				}
+			}
+		}
+		// Claiming: a value confined to one box within a row or column.
+		for (int u = ROWS; u < BOXES; u++) {
+			int base = u * 9;
+			int[] inBox = parts;
+			for (int k = 0; k < 3; k++) {
+				inBox[k] = candidates[UNITS[base + 3 * k]]
+						| candidates[UNITS[base + 3 * k + 1]]
+						| candidates[UNITS[base + 3 * k + 2]];
+			}
+			for (int k = 0; k < 3; k++) {
+				int only = inBox[k] & ~inBox[(k + 1) % 3] & ~inBox[(k + 2) % 3];
+				if (only != 0
+						&& !eliminateOutside(BOXES + BOX[UNITS[base + 3 * k]], u,
+								only)) {
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes candidates from the spaces of a unit that are not in another
+	 * unit. The other unit is a box, if the unit is a row or a column, and a
+	 * row or a column, if the unit is a box.
+	 *
+	 * @return false if a space is left with no candidates
+	 */
+	private boolean eliminateOutside(int unit, int other, int mask) {
+		if (mask == 0) {
+			return true;
+		}
+		for (int k = unit * 9; k < unit * 9 + 9; k++) {
+			int space = UNITS[k];
+			boolean inOther;
+			if (unit >= BOXES) {
+				inOther = other < COLUMNS ? ROW[space] == other
+						: COLUMN[space] == other - COLUMNS;
+			} else {
+				inOther = BOX[space] == other;
+			}
+			if (!inOther && !eliminate(space, mask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the naked and hidden subset rules for pairs and triples.
+	 *
+	 * @return false if a contradiction is found
+	 */
+	private boolean subsets() {
+		int[] places = parts;
+		for (int u = 0; u < 3 * 9; u++) {
+			int base = u * 9;
+			// Naked subsets, over the unsolved spaces of the unit.
+			for (int i = 0; i < 9; i++) {
+				int a = candidates[UNITS[base + i]];
+				if (Integer.bitCount(a) < 2) {
+					continue;
+				}
+				for (int j = i + 1; j < 9; j++) {
+					int ab = a | candidates[UNITS[base + j]];
+					if (Integer.bitCount(candidates[UNITS[base + j]]) < 2
+							|| Integer.bitCount(ab) > 3) {
+						continue;
+					}
+					if (Integer.bitCount(ab) == 2
+							&& !eliminateExcept(base, 1 << i | 1 << j, ab)) {
+						return false;
+					}
+					for (int k = j + 1; k < 9; k++) {
+						int abc = ab | candidates[UNITS[base + k]];
+						if (Integer.bitCount(candidates[UNITS[base + k]]) >= 2
+								&& Integer.bitCount(abc) == 3
+								&& !eliminateExcept(base, 1 << i | 1 << j | 1 << k, abc)) {
+							return false;
+						}
+					}
+				}
+			}
+			// Hidden subsets: the places of each value, as a mask of positions
+			// in the unit.
+			for (int d = 0; d < 9; d++) {
+				places[d] = 0;
+			}
+			for (int k = 0; k < 9; k++) {
+				for (int mask = candidates[UNITS[base + k]]; mask != 0; mask &= mask - 1) {
+					places[Integer.numberOfTrailingZeros(mask)] |= 1 << k;
+				}
+			}
+			for (int d = 0; d < 9; d++) {
+				if (Integer.bitCount(places[d]) < 2) {
+					continue;
+				}
+				for (int e = d + 1; e < 9; e++) {
+					int de = places[d] | places[e];
+					if (Integer.bitCount(places[e]) < 2 || Integer.bitCount(de) > 3) {
+						continue;
+					}
+					if (Integer.bitCount(de) == 2
+							&& !keepOnly(base, de, 1 << d | 1 << e)) {
+						return false;
+					}
+					for (int f = e + 1; f < 9; f++) {
+						int def = de | places[f];
+						if (Integer.bitCount(places[f]) >= 2
+								&& Integer.bitCount(def) == 3
+								&& !keepOnly(base, def, 1 << d | 1 << e | 1 << f)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes candidates from the spaces of a unit, except from some of them.
+	 *
+	 * @param base
+	 *            the index of the unit in UNITS
+	 * @param positions
+	 *            the positions in the unit of the spaces to leave alone
+	 * @param mask
+	 *            the candidates to remove
+	 * @return false if a space is left with no candidates
+	 */
+	private boolean eliminateExcept(int base, int positions, int mask) {
+		for (int k = 0; k < 9; k++) {
+			if ((positions & 1 << k) == 0 && !eliminate(UNITS[base + k], mask)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all but some candidates from some spaces of a unit.
+	 *
+	 * @param base
+	 *            the index of the unit in UNITS
+	 * @param positions
+	 *            the positions in the unit of the spaces
+	 * @param mask
+	 *            the candidates to keep
+	 * @return false if a space is left with no candidates
+	 */
+	private boolean keepOnly(int base, int positions, int mask) {
+		for (int k = 0; k < 9; k++) {
+			if ((positions & 1 << k) != 0 && !eliminate(UNITS[base + k], ~mask & ALL)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Applies the X-Wing rule for rows and for columns.
+	 *
+	 * @return false if a contradiction is found
+	 */
+	private boolean xWings() {
+		return xWings(ROWS, COLUMNS) && xWings(COLUMNS, ROWS);
+	}
+
+	/**
+	 * Applies the X-Wing rule with base lines (rows or columns) and cover
+	 * lines (columns or rows). Position k of a base line is in cover line k.
+	 */
+	private boolean xWings(int baseLines, int coverLines) {
+		int[] places = parts;
+		for (int bit = 1; bit < ALL; bit <<= 1) {
+			for (int i = 0; i < 9; i++) {
+				places[i] = 0;
+				for (int k = 0; k < 9; k++) {
+					if ((candidates[UNITS[(baseLines + i) * 9 + k]] & bit) != 0) {
+						places[i] |= 1 << k;
+					}
+				}
+			}
+			for (int i = 0; i < 9; i++) {
+				if (Integer.bitCount(places[i]) != 2) {
+					continue;
+				}
+				for (int j = i + 1; j < 9; j++) {
+					if (places[j] != places[i]) {
+						continue;
+					}
+					// The value is in one of the two places of both base lines,
+					// so it can be removed from the rest of the cover lines.
+					for (int cover = places[i]; cover != 0; cover &= cover - 1) {
+						int base = (coverLines + Integer.numberOfTrailingZeros(cover)) * 9;
+						if (!eliminateExcept(base, 1 << i | 1 << j, bit)) {
+							return false;
+						}
+					}
+				}
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,427 @@
+package org.wintrisstech.sudoku;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A compact, immutable encoding of a 9x9 grid, for hashing, deduplication,
+ * sorting and transfer of large numbers of grids.
+ * <p>
+ * There are two forms:
+ * <ul>
+ * <li>A <em>solved</em> grid is encoded in two longs (128 bits). The spaces
+ * are visited row by row, and each value is replaced by its rank among the
+ * values that are still possible given the spaces before it in its row,
+ * column and box. These ranks are the digits of a mixed radix number. Since
+ * the space at (row, column) has at most <code>9 - max(row, column)</code>
+ * possible values, the number is less than 2<sup>123</sup>.
+ * <li>Any other grid (a puzzle) is encoded as an 81-bit mask of its clues in
+ * two longs, followed by the values of the clues, 4 bits each, 16 per long.
+ * A 17-clue puzzle takes 4 longs. The highest bit of the first long is set to
+ * tell this form from the solved form.
+ * </ul>
+ * Grids are ordered by comparing their longs as unsigned numbers, so all
+ * solved grids come before all puzzles. The order is consistent with equals.
+ * <p>
+ * Bulk users that can't afford an object per grid can keep the encodings back
+ * to back in a flat <code>long[]</code> with the static methods
+ * {@link #encode(int[][], long[], int)}, {@link #length(long[], int)},
+ * {@link #compare(long[], int, long[], int)},
+ * {@link #hash64(long[], int)} and {@link #decode(long[], int)}.
+ *
+ * @author Erik
+ */
+public final class PackedGrid implements Comparable<PackedGrid> {
+
+	// Marks the puzzle form in the first long.
+	private static final long PUZZLE_FORM = 1L << 63;
+	// The mask of the low 32 bits of a long.
+	private static final long LOW_32 = 0xffffffffL;
+	// The number of spaces in the first long of the clue mask.
+	private static final int HIGH_MASK_BITS = 9 * 9 - 64;
+
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+	private static final byte[] ROW = GEOMETRY.row;
+	private static final byte[] COLUMN = GEOMETRY.column;
+	private static final byte[] BOX = GEOMETRY.box;
+
+	/**
+	 * The most longs that an encoding takes: a grid with 81 clues that is not
+	 * solved.
+	 */
+	public static final int MAX_WORDS = 2 + (9 * 9 + 15) / 16;
+
+	// Scratch space for the values used in each row, column and box, so that
+	// encoding and decoding don't allocate it.
+	private static final ThreadLocal<int[]> USED = ThreadLocal
+			.withInitial(() -> new int[3 * 9]);
+	// Scratch space for of().
+	private static final ThreadLocal<long[]> WORDS = ThreadLocal
+			.withInitial(() -> new long[MAX_WORDS]);
+
+	private final long[] words;
+
+	private PackedGrid(long[] words) {
+		this.words = words;
+	}
+
+	/**
+	 * Encodes a grid.
+	 *
+	 * @param grid
+	 *            a 9x9 grid where 0 is an empty space. It is not modified.
+	 * @return the encoded grid
+	 * @throws IllegalArgumentException
+	 *             if a value is not between 0 and 9
+	 */
+	public static PackedGrid of(int[][] grid) throws IllegalArgumentException {
+		long[] scratch = WORDS.get();
+		return new PackedGrid(Arrays.copyOf(scratch, encode(grid, scratch, 0)));
+	}
+
+	/**
+	 * Encodes a grid into an array, without allocating.
+	 *
+	 * @param grid
+	 *            a 9x9 grid where 0 is an empty space. It is not modified.
+	 * @param dst
+	 *            the array to write to. It must have room for MAX_WORDS longs
+	 *            at offset.
+	 * @param offset
+	 *            the index of the first long to write
+	 * @return the number of longs written
+	 * @throws IllegalArgumentException
+	 *             if a value is not between 0 and 9
+	 */
+	public static int encode(int[][] grid, long[] dst, int offset)
+			throws IllegalArgumentException {
+		int[] used = USED.get();
+		if (rank(grid, used, dst, offset)) {
+			return 2;
+		}
+		return packClues(grid, dst, offset);
+	}
+
+	/**
+	 * Gets the number of longs of an encoding in an array.
+	 *
+	 * @param words
+	 *            the array
+	 * @param offset
+	 *            the index of the first long of the encoding
+	 * @return the number of longs of the encoding
+	 */
+	public static int length(long[] words, int offset) {
+		long first = words[offset];
+		if ((first & PUZZLE_FORM) == 0) {
+			return 2;
+		}
+		int clues = Long.bitCount(first & ~PUZZLE_FORM)
+				+ Long.bitCount(words[offset + 1]);
+		return 2 + (clues + 15) / 16;
+	}
+
+	/**
+	 * Compares two encodings in arrays, in the order of
+	 * {@link #compareTo(PackedGrid)}.
+	 *
+	 * @return a negative number, zero, or a positive number as the first
+	 *         grid is less than, equal to, or greater than the second
+	 */
+	public static int compare(long[] a, int aOffset, long[] b, int bOffset) {
+		int aLength = length(a, aOffset);
+		int bLength = length(b, bOffset);
+		int n = Math.min(aLength, bLength);
+		for (int k = 0; k < n; k++) {
+			int c = Long.compareUnsigned(a[aOffset + k], b[bOffset + k]);
+			if (c != 0) {
+				return c;
+			}
+		}
+		return aLength - bLength;
+	}
+
+	/**
+	 * Computes the hash of an encoding in an array, the same as
+	 * {@link #hash64()} of the grid.
+	 *
+	 * @param words
+	 *            the array
+	 * @param offset
+	 *            the index of the first long of the encoding
+	 * @return the hash
+	 */
+	public static long hash64(long[] words, int offset) {
+		int length = length(words, offset);
+		long h = length * 0x9e3779b97f4a7c15L;
+		for (int k = offset; k < offset + length; k++) {
+			h = Long.rotateLeft(h ^ mix(words[k]), 27) * 0x9e3779b97f4a7c15L
+					+ 0x52dce729L;
+		}
+		return mix(h);
+	}
+
+	/**
+	 * Decodes an encoding in an array.
+	 *
+	 * @param words
+	 *            the array
+	 * @param offset
+	 *            the index of the first long of the encoding
+	 * @return a new 9x9 array holding the grid
+	 */
+	public static int[][] decode(long[] words, int offset) {
+		if ((words[offset] & PUZZLE_FORM) == 0) {
+			return unrank(words[offset], words[offset + 1]);
+		}
+		return unpackClues(words, offset);
+	}
+
+	/**
+	 * Decodes the grid.
+	 *
+	 * @return a new 9x9 array holding the grid
+	 */
+	public int[][] toGrid() {
+		return decode(words, 0);
+	}
+
+	/**
+	 * Tests whether the grid is a solved grid, i.e., whether every space is
+	 * filled and no value occurs twice in a row, column or box.
+	 *
+	 * @return true if, and only if, the grid is solved
+	 */
+	public boolean isSolved() {
+		return (words[0] & PUZZLE_FORM) == 0;
+	}
+
+	/**
+	 * Computes a 64-bit hash of the grid. Equal grids have equal hashes, and
+	 * every bit of the hash depends on every bit of the encoding.
+	 *
+	 * @return the hash
+	 */
+	public long hash64() {
+		return hash64(words, 0);
+	}
+
+	/**
+	 * Gets the number of bytes written by {@link #writeTo(ByteBuffer)}.
+	 *
+	 * @return the size of the encoding in bytes
+	 */
+	public int byteSize() {
+		return 8 * words.length;
+	}
+
+	/**
+	 * Writes the encoding to a buffer. The encoding is self-delimiting, so
+	 * grids may be written one after the other and read back with
+	 * {@link #readFrom(ByteBuffer)}.
+	 *
+	 * @param buffer
+	 *            the buffer to write to
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		for (long word : words) {
+			buffer.putLong(word);
+		}
+	}
+
+	/**
+	 * Reads an encoding written by {@link #writeTo(ByteBuffer)}.
+	 *
+	 * @param buffer
+	 *            the buffer to read from
+	 * @return the grid
+	 */
+	public static PackedGrid readFrom(ByteBuffer buffer) {
+		long first = buffer.getLong();
+		long second = buffer.getLong();
+		if ((first & PUZZLE_FORM) == 0) {
+			return new PackedGrid(new long[] { first, second });
+		}
+		int clues = Long.bitCount(first & ~PUZZLE_FORM) + Long.bitCount(second);
+		long[] words = new long[2 + (clues + 15) / 16];
+		words[0] = first;
+		words[1] = second;
+		for (int k = 2; k < words.length; k++) {
+			words[k] = buffer.getLong();
+		}
+		return new PackedGrid(words);
+	}
+
+	@Override
+	public int compareTo(PackedGrid other) {
+		return compare(words, 0, other.words, 0);
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return obj instanceof PackedGrid
+				&& Arrays.equals(words, ((PackedGrid) obj).words);
+	}
+
+	@Override
+	public int hashCode() {
+		long h = hash64();
+		return (int) (h ^ h >>> 32);
+	}
+
+	/**
+	 * Returns the grid in the line format of {@link Puzzles#format(int[][])}.
+	 */
+	@Override
+	public String toString() {
+		return Puzzles.format(toGrid());
+	}
+
+	/**
+	 * Encodes a solved grid as a mixed radix number. The first space is the
+	 * least significant digit, so the number is built from the first space
+	 * on, keeping the product of the radices so far as the place value.
+	 *
+	 * @param used
+	 *            scratch space for 27 masks
+	 * @return true if the grid is solved and the high and low longs of the
+	 *         number were written to dst, or false if the grid is not solved
+	 */
+	private static boolean rank(int[][] grid, int[] used, long[] dst, int offset) {
+		Arrays.fill(used, 0);
+		long hi = 0, lo = 0; // the number
+		long placeHi = 0, placeLo = 1; // the place value of the space
+		for (int s = 0; s < 9 * 9; s++) {
+			int value = grid[ROW[s]][COLUMN[s]];
+			if (value < 1 || value > 9) {
+				if (value != 0) {
+					throw new IllegalArgumentException("Illegal value " + value);
+				}
+				return false;
+			}
+			int taken = used[ROW[s]] | used[9 + COLUMN[s]] | used[18 + BOX[s]];
+			int bit = 1 << value;
+			if ((taken & bit) != 0) {
+				return false;
+			}
+			int candidates = ~taken & 0x3fe;
+			long radix = Integer.bitCount(candidates);
+			long digit = Integer.bitCount(candidates & (bit - 1));
+			// number += digit * place, in 128 bits, 32 bits at a time.
+			long a = (placeLo & LOW_32) * digit;
+			long b = (placeLo >>> 32) * digit + (a >>> 32);
+			long productLo = b << 32 | (a & LOW_32);
+			long sum = lo + productLo;
+			hi += placeHi * digit + (b >>> 32)
+					+ (Long.compareUnsigned(sum, lo) < 0 ? 1 : 0);
+			lo = sum;
+			// place *= radix
+			a = (placeLo & LOW_32) * radix;
+			b = (placeLo >>> 32) * radix + (a >>> 32);
+			placeLo = b << 32 | (a & LOW_32);
+			placeHi = placeHi * radix + (b >>> 32);
+			used[ROW[s]] |= bit;
+			used[9 + COLUMN[s]] |= bit;
+			used[18 + BOX[s]] |= bit;
+		}
+		dst[offset] = hi;
+		dst[offset + 1] = lo;
+		return true;
+	}
+
+	private static int[][] unrank(long hi, long lo) {
+		int[][] grid = new int[9][9];
+		int[] used = USED.get();
+		Arrays.fill(used, 0);
+		for (int s = 0; s < 9 * 9; s++) {
+			int taken = used[ROW[s]] | used[9 + COLUMN[s]] | used[18 + BOX[s]];
+			int candidates = ~taken & 0x3fe;
+			long r = Integer.bitCount(candidates);
+			if (r == 0) {
+				throw new IllegalStateException("Corrupt solved grid");
+			}
+			// Divide the 128-bit number by r, 32 bits at a time.
+			long q3 = (hi >>> 32) / r, rem = (hi >>> 32) % r;
+			long cur = rem << 32 | (hi & 0xffffffffL);
+			long q2 = cur / r;
+			rem = cur % r;
+			cur = rem << 32 | lo >>> 32;
+			long q1 = cur / r;
+			rem = cur % r;
+			cur = rem << 32 | (lo & 0xffffffffL);
+			long q0 = cur / r;
+			rem = cur % r;
+			hi = q3 << 32 | q2;
+			lo = q1 << 32 | q0;
+			// The value is the rem'th candidate.
+			for (int k = 0; k < rem; k++) {
+				candidates &= candidates - 1;
+			}
+			int bit = Integer.lowestOneBit(candidates);
+			grid[ROW[s]][COLUMN[s]] = Integer.numberOfTrailingZeros(bit);
+			used[ROW[s]] |= bit;
+			used[9 + COLUMN[s]] |= bit;
+			used[18 + BOX[s]] |= bit;
+		}
+		return grid;
+	}
+
+	/**
+	 * Encodes a grid in the puzzle form.
+	 *
+	 * @return the number of longs written to dst
+	 */
+	private static int packClues(int[][] grid, long[] dst, int offset) {
+		long high = 0, low = 0;
+		int clues = 0;
+		for (int s = 0; s < 9 * 9; s++) {
+			if (grid[ROW[s]][COLUMN[s]] != 0) {
+				if (s < HIGH_MASK_BITS) {
+					high |= 1L << (HIGH_MASK_BITS - 1 - s);
+				} else {
+					low |= 1L << (63 - (s - HIGH_MASK_BITS));
+				}
+				clues++;
+			}
+		}
+		int length = 2 + (clues + 15) / 16;
+		Arrays.fill(dst, offset, offset + length, 0);
+		dst[offset] = PUZZLE_FORM | high;
+		dst[offset + 1] = low;
+		for (int s = 0, k = 0; s < 9 * 9; s++) {
+			int value = grid[ROW[s]][COLUMN[s]];
+			if (value != 0) {
+				if (value < 0 || value > 9) {
+					throw new IllegalArgumentException("Illegal value " + value);
+				}
+				dst[offset + 2 + k / 16] |= (long) value << (60 - 4 * (k % 16));
+				k++;
+			}
+		}
+		return length;
+	}
+
+	private static int[][] unpackClues(long[] words, int offset) {
+		int[][] grid = new int[9][9];
+		long high = words[offset], low = words[offset + 1];
+		for (int s = 0, k = 0; s < 9 * 9; s++) {
+			boolean clue = s < HIGH_MASK_BITS
+					? (high >>> (HIGH_MASK_BITS - 1 - s) & 1) != 0
+					: (low >>> (63 - (s - HIGH_MASK_BITS)) & 1) != 0;
+			if (clue) {
+				grid[ROW[s]][COLUMN[s]] = (int) (words[offset + 2 + k / 16] >>> (60 - 4 * (k % 16)) & 0xf);
+				k++;
+			}
+		}
+		return grid;
+	}
+
+	// The finalizer of MurmurHash3.
+	private static long mix(long h) {
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ h >>> 33;
+	}
+}
@@ -0,0 +1,74 @@
+package org.wintrisstech.sudoku;
+
+/**
+ * A solver that routes each puzzle to the engine that suits it. Every puzzle
+ * first goes to an {@link InferenceSolver}, which is fast on almost all
+ * puzzles. If its search blows past a node budget, the puzzle is handed to a
+ * {@link SatSolver}, whose clause learning copes with pathological and
+ * unsatisfiable grids.
+ *
+ * @author Erik
+ */
+class PortfolioSolver implements SudokuEngine {
+
+	/**
+	 * The default node budget of the backtracking engine.
+	 */
+	static final long DEFAULT_NODE_BUDGET = 10000;
+
+	private final InferenceSolver backtracker = new InferenceSolver(
+			InferenceSolver.Level.LOCKED_CANDIDATES);
+	private final SatSolver satSolver = new SatSolver();
+	private long nodes;
+	private boolean routedToSat;
+
+	/**
+	 * Creates a solver with the default node budget.
+	 */
+	PortfolioSolver() {
+		this(DEFAULT_NODE_BUDGET);
+	}
+
+	/**
+	 * Creates a solver.
+	 *
+	 * @param nodeBudget
+	 *            the number of nodes the backtracking engine may search before
+	 *            the puzzle is handed to the SAT engine
+	 */
+	PortfolioSolver(long nodeBudget) {
+		backtracker.setNodeBudget(nodeBudget);
+	}
+
+	@Override
+	public boolean solve(int[][] puzzle) {
+		routedToSat = false;
+		boolean solved = backtracker.solve(puzzle);
+		nodes = backtracker.getNodes();
+		if (solved || !backtracker.isBudgetExhausted()) {
+			return solved;
+		}
+		routedToSat = true;
+		solved = satSolver.solve(puzzle);
+		nodes += satSolver.getNodes();
+		return solved;
+	}
+
+	/**
+	 * Gets the number of nodes searched by the engines that the last puzzle
+	 * was routed to.
+	 */
+	@Override
+	public long getNodes() {
+		return nodes;
+	}
+
+	/**
+	 * Tests whether the last puzzle was handed to the SAT engine.
+	 *
+	 * @return true if the backtracking engine exhausted its node budget
+	 */
+	boolean wasRoutedToSat() {
+		return routedToSat;
+	}
+}
@@ -0,0 +1,233 @@
+package org.wintrisstech.sudoku;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over the puzzles in a file, one puzzle per line in the format
+ * read by {@link Puzzles#parse(CharSequence)}. Blank lines and lines starting
+ * with '#' are skipped.
+ * <p>
+ * The file is memory-mapped a window at a time, so files of any size can be
+ * traversed. Splitting is done by byte range: the range is cut in half and the
+ * cut is moved forward to the next line boundary, so each puzzle belongs to
+ * exactly one of the two halves.
+ *
+ * @author Erik
+ */
+class PuzzleSpliterator implements Spliterator<int[][]> {
+
+	// The default maximum number of bytes mapped at a time.
+	private static final int WINDOW_SIZE = 1 << 26;
+	// Ranges shorter than this are not split any further.
+	private static final int MIN_SPLIT_SIZE = 1 << 16;
+	// The length of a puzzle in line format, including the line terminator.
+	private static final int LINE_LENGTH = 9 * 9 + 1;
+
+	private final FileChannel channel;
+	// The maximum number of bytes mapped at a time.
+	private final int windowSize;
+	/*
+	 * The range of the file that remains to be traversed. Both position and
+	 * end are always at the start of a line (or at the end of the file).
+	 */
+	private long position;
+	private final long end;
+	/*
+	 * The part of the file that is currently mapped, or null if nothing is
+	 * mapped. The window always ends at the start of a line.
+	 */
+	private MappedByteBuffer window;
+	private long windowStart;
+	private long windowEnd;
+
+	/**
+	 * Creates a Spliterator over a range of a file. The range must start and
+	 * end at line boundaries.
+	 *
+	 * @param channel
+	 *            an open channel to the file. The channel is not closed by
+	 *            this Spliterator.
+	 * @param start
+	 *            the position of the first byte of the range
+	 * @param end
+	 *            the position following the last byte of the range
+	 */
+	PuzzleSpliterator(FileChannel channel, long start, long end) {
+		this(channel, start, end, WINDOW_SIZE);
+	}
+
+	/**
+	 * Creates a Spliterator over a range of a file, mapping at most a given
+	 * number of bytes at a time.
+	 *
+	 * @param channel
+	 *            an open channel to the file. The channel is not closed by
+	 *            this Spliterator.
+	 * @param start
+	 *            the position of the first byte of the range
+	 * @param end
+	 *            the position following the last byte of the range
+	 * @param windowSize
+	 *            the maximum number of bytes to map. Must be longer than any
+	 *            line.
+	 */
+	PuzzleSpliterator(FileChannel channel, long start, long end, int windowSize) {
+		this.channel = channel;
+		this.windowSize = windowSize;
+		this.position = start;
+		this.end = end;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super int[][]> action) {
+		while (position < end) {
+			if (window == null || position >= windowEnd) {
+				mapWindow();
+			}
+			int from = (int) (position - windowStart);
+			int limit = (int) (windowEnd - windowStart);
+			int to = from;
+			while (to < limit && window.get(to) != '\n') {
+				to++;
+			}
+			long lineStart = position;
+			position = windowStart + Math.min(to + 1, limit);
+			int[][] puzzle = parse(from, to, lineStart);
+			if (puzzle != null) {
+				action.accept(puzzle);
+				return true;
+			}
+		}
+		window = null;
+		return false;
+	}
+
+	@Override
+	public Spliterator<int[][]> trySplit() {
+		if (end - position < MIN_SPLIT_SIZE) {
+			return null;
+		}
+		long split = nextLineStart(position + (end - position) / 2);
+		if (split >= end) {
+			return null;
+		}
+		Spliterator<int[][]> prefix = new PuzzleSpliterator(channel, position,
+				split, windowSize);
+		position = split;
+		window = null;
+		return prefix;
+	}
+
+	@Override
+	public long estimateSize() {
+		return (end - position) / LINE_LENGTH;
+	}
+
+	@Override
+	public int characteristics() {
+		return ORDERED | NONNULL | IMMUTABLE;
+	}
+
+	/**
+	 * Maps the window that starts at position. Unless the window reaches the
+	 * end of the range, it is shortened to end just after its last line
+	 * terminator.
+	 */
+	private void mapWindow() {
+		long size = Math.min(end - position, windowSize);
+		try {
+			window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		windowStart = position;
+		windowEnd = position + size;
+		if (windowEnd < end) {
+			int last = (int) size - 1;
+			while (last >= 0 && window.get(last) != '\n') {
+				last--;
+			}
+			if (last < 0) {
+				throw new UncheckedIOException(new IOException(
+						"No line terminator within " + windowSize
+								+ " bytes of position " + position));
+			}
+			windowEnd = windowStart + last + 1;
+		}
+	}
+
+	/**
+	 * Finds the start of the first line that starts at or after a position.
+	 *
+	 * @param from
+	 *            a position in the file, greater than 0
+	 * @return the position of the start of the line, or end if there is none
+	 *         before end
+	 */
+	private long nextLineStart(long from) {
+		ByteBuffer buffer = ByteBuffer.allocate(4096);
+		long pos = from - 1; // the terminator may be the byte before from
+		try {
+			while (pos < end) {
+				buffer.clear();
+				int n = channel.read(buffer, pos);
+				if (n <= 0) {
+					return end;
+				}
+				for (int k = 0; k < n; k++) {
+					if (buffer.get(k) == '\n') {
+						return Math.min(pos + k + 1, end);
+					}
+				}
+				pos += n;
+			}
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+		return end;
+	}
+
+	/**
+	 * Parses a line of the current window.
+	 *
+	 * @param from
+	 *            the index of the first byte of the line in the window
+	 * @param to
+	 *            the index following the last byte of the line
+	 * @param lineStart
+	 *            the position of the line in the file, used in error messages
+	 * @return the puzzle, or null if the line is blank or a comment
+	 * @throws IllegalArgumentException
+	 *             if the line is neither a puzzle, blank, nor a comment
+	 */
+	private int[][] parse(int from, int to, long lineStart) {
+		while (to > from && window.get(to - 1) <= ' ') { // trailing '\r' etc.
+			to--;
+		}
+		if (to == from || window.get(from) == '#') {
+			return null;
+		}
+		if (to - from != 9 * 9) {
+			throw new IllegalArgumentException("Expected 81 spaces, found "
+					+ (to - from) + " in line at position " + lineStart);
+		}
+		int[][] puzzle = new int[9][9];
+		for (int i = 0, k = from; i < 9; i++) {
+			for (int j = 0; j < 9; j++, k++) {
+				int value = Puzzles.valueOf(window.get(k));
+				if (value < 0) {
+					throw new IllegalArgumentException("Illegal character at position "
+							+ (windowStart + k));
+				}
+				puzzle[i][j] = value;
+			}
+		}
+		return puzzle;
+	}
+}
@@ -0,0 +1,114 @@
+package org.wintrisstech.sudoku;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Bulk solving of puzzles with the Java Stream API. For example, to solve all
+ * the puzzles in a file in parallel:
+ *
+ * <pre>
+ * try (Stream&lt;int[][]&gt; puzzles = PuzzleStreams.puzzles(path)) {
+ * 	puzzles.parallel().map(PuzzleStreams::solve).forEach(...);
+ * }
+ * </pre>
+ *
+ * Each thread that solves puzzles gets its own Solver, which it reuses for all
+ * the puzzles it solves. To skip puzzles that have been solved before, map
+ * with <code>p -&gt; PuzzleStreams.solve(p, store)</code> and a
+ * {@link SolutionStore}.
+ *
+ * @author Erik
+ */
+public final class PuzzleStreams {
+
+	// One Solver per thread, like the single Solver in SudokuUI.run().
+	private static final ThreadLocal<Solver> SOLVERS = ThreadLocal
+			.withInitial(Solver::new);
+
+	private PuzzleStreams() {
+	}
+
+	/**
+	 * Streams the puzzles in a file, one puzzle per line in the format read by
+	 * {@link Puzzles#parse(CharSequence)}. Blank lines and lines starting with
+	 * '#' are skipped. The stream splits by byte range, so it scales when made
+	 * parallel. Close the stream to close the file.
+	 *
+	 * @param path
+	 *            the file to read
+	 * @return a stream of puzzles, in file order
+	 * @throws IOException
+	 *             if the file cannot be opened
+	 */
+	public static Stream<int[][]> puzzles(Path path) throws IOException {
+		FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+		try {
+			return StreamSupport.stream(
+					new PuzzleSpliterator(channel, 0, channel.size()), false)
+					.onClose(() -> {
+						try {
+							channel.close();
+						} catch (IOException ex) {
+							throw new UncheckedIOException(ex);
+						}
+					});
+		} catch (IOException | RuntimeException ex) {
+			channel.close();
+			throw ex;
+		}
+	}
+
+	/**
+	 * Solves a puzzle with the current thread's Solver. The puzzle is solved
+	 * in place.
+	 *
+	 * @param puzzle
+	 *            the puzzle to solve
+	 * @return the puzzle, filled with its solution, or null if the puzzle has
+	 *         no solution
+	 */
+	public static int[][] solve(int[][] puzzle) {
+		return SOLVERS.get().solve(puzzle) ? puzzle : null;
+	}
+
+	/**
+	 * Solves a puzzle, checking a solution store before searching. Solutions
+	 * found by searching are added to the store. The puzzle is solved in
+	 * place.
+	 *
+	 * @param puzzle
+	 *            the puzzle to solve
+	 * @param store
+	 *            the store to look up and record solutions in
+	 * @return the puzzle, filled with its solution, or null if the puzzle has
+	 *         no solution
+	 * @throws UncheckedIOException
+	 *             if the store cannot be read or written
+	 */
+	public static int[][] solve(int[][] puzzle, SolutionStore store)
+			throws UncheckedIOException {
+		try {
+			int[][] solution = store.get(puzzle);
+			if (solution != null) {
+				for (int i = 0; i < puzzle.length; i++) {
+					System.arraycopy(solution[i], 0, puzzle[i], 0, puzzle[i].length);
+				}
+				return puzzle;
+			}
+			int[][] original = Puzzles.copy(puzzle);
+			if (solve(puzzle) == null) {
+				return null;
+			}
+			store.put(original, puzzle);
+			return puzzle;
+		} catch (IOException ex) {
+			throw new UncheckedIOException(ex);
+		}
+	}
+}
@@ -106,10 +106,88 @@ public abstract class Puzzles {
 	public static int[][] getPuzzle(int puzzleNumber, int[][][] puzzles)
 			throws IndexOutOfBoundsException {
 		assert 0 <= puzzleNumber && puzzleNumber < puzzles.length;
-		int[][] puzzle = puzzles[puzzleNumber].clone(); // shallow clone
-		for (int i = 0; i < puzzle.length; i++) { // deep clone
-			puzzle[i] = puzzle[i].clone();
+		return copy(puzzles[puzzleNumber]);
+	}
+
+	/**
+	 * Copies a puzzle, so that the copy can be modified without affecting
+	 * the original.
+	 * 
+	 * @param puzzle
+	 *            the puzzle
+	 * @return a deep copy of the puzzle
+	 */
+	public static int[][] copy(int[][] puzzle) {
+		int[][] copy = puzzle.clone(); // shallow clone
+		for (int i = 0; i < copy.length; i++) { // deep clone
+			copy[i] = copy[i].clone();
+		}
+		return copy;
+	}
+
+	/**
+	 * Parses a puzzle written in line format: 81 characters, one per space,
+	 * row by row. The characters '1' to '9' are clues, and '0' or '.' is an
+	 * empty space. Trailing white space is ignored.
+	 * 
+	 * @param line
+	 *            the puzzle in line format
+	 * @return the puzzle
+	 * @throws IllegalArgumentException
+	 *             if the line is not a puzzle in line format
+	 */
+	public static int[][] parse(CharSequence line)
+			throws IllegalArgumentException {
+		int length = line.length();
+		while (length > 0 && Character.isWhitespace(line.charAt(length - 1))) {
+			length--;
+		}
+		if (length != 9 * 9) {
+			throw new IllegalArgumentException("Expected 81 spaces, found "
+					+ length + ": " + line);
+		}
+		int[][] puzzle = new int[9][9];
+		for (int k = 0; k < length; k++) {
+			int value = valueOf(line.charAt(k));
+			if (value < 0) {
+				throw new IllegalArgumentException("Illegal character '"
+						+ line.charAt(k) + "' at position " + k + ": " + line);
+			}
+			puzzle[k / 9][k % 9] = value;
 		}
 		return puzzle;
 	}
+
+	/**
+	 * Formats a puzzle in line format. Empty spaces are written as '.'.
+	 * 
+	 * @param puzzle
+	 *            the puzzle to format
+	 * @return the puzzle in line format, without a line terminator
+	 * @see #parse(CharSequence)
+	 */
+	public static String format(int[][] puzzle) {
+		StringBuilder line = new StringBuilder(9 * 9);
+		for (int i = 0; i < 9; i++) {
+			for (int j = 0; j < 9; j++) {
+				line.append(puzzle[i][j] == 0 ? '.' : (char) ('0' + puzzle[i][j]));
+			}
+		}
+		return line.toString();
+	}
+
+	/**
+	 * Gets the value of a space in line format.
+	 * 
+	 * @param ch
+	 *            a character (or byte) of a puzzle in line format
+	 * @return the value of the space, 0 if empty, or -1 if ch is not a legal
+	 *         space
+	 */
+	static int valueOf(int ch) {
+		if ('1' <= ch && ch <= '9') {
+			return ch - '0';
+		}
+		return ch == '0' || ch == '.' ? 0 : -1;
+	}
 }
@@ -0,0 +1,466 @@
+package org.wintrisstech.sudoku;
+
+import java.util.Arrays;
+
+/**
+ * A Sudoku puzzle solver that encodes the puzzle as a boolean formula in
+ * conjunctive normal form (CNF) and solves it with a built-in conflict driven
+ * clause learning (CDCL) SAT solver.
+ * <p>
+ * There is one variable for each space and value, true if the space holds the
+ * value. The clauses say that each space holds at least one value and at most
+ * one value, that each value occurs at least once in each unit, and that no
+ * two peers hold the same value. The clues are added as unit clauses.
+ * <p>
+ * The SAT solver uses two watched literals per clause, learns a first unique
+ * implication point clause from each conflict, picks decision variables by
+ * activity (VSIDS), saves phases and restarts on a Luby schedule. Learnt
+ * clauses are thinned out at restarts. Learning lets it prove that a puzzle
+ * has no solution without exhausting the whole search tree, which makes it
+ * the engine of last resort for grids where the backtracking solvers blow up.
+ *
+ * @author Erik
+ */
+class SatSolver implements SudokuEngine {
+
+	// The number of variables: one per space and value.
+	private static final int VARIABLES = 9 * 9 * 9;
+	// The number of conflicts in the first run between restarts.
+	private static final int RESTART_BASE = 100;
+	// The factor by which activities of variables decay per conflict.
+	private static final double VARIABLE_DECAY = 0.95;
+
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+
+	/*
+	 * The clauses. Clauses 0 to baseClauses - 1 encode the rules of Sudoku
+	 * and are shared by all puzzles; the rest are learnt. A literal is 2 * v
+	 * for variable v and 2 * v + 1 for its negation.
+	 */
+	private int[][] clauses;
+	private int clauseCount;
+	private final int baseClauses;
+	// The number of learnt clauses that triggers thinning them out.
+	private int maxLearnts;
+	/*
+	 * The clauses that watch each literal, i.e., that must be visited when
+	 * the literal becomes false. A clause watches its first two literals.
+	 */
+	private final int[][] watches = new int[2 * VARIABLES][];
+	private final int[] watchCount = new int[2 * VARIABLES];
+
+	// The value of each variable: 1 (true), -1 (false) or 0 (unassigned).
+	private final byte[] values = new byte[VARIABLES];
+	// The decision level at which each variable was assigned.
+	private final int[] levels = new int[VARIABLES];
+	// The clause that implied each variable, or -1 for decisions.
+	private final int[] reasons = new int[VARIABLES];
+	// The last value of each variable, used for the next decision on it.
+	private final boolean[] phases = new boolean[VARIABLES];
+	private final double[] activity = new double[VARIABLES];
+	private double activityIncrement = 1;
+
+	// The assigned literals, in order, and where each decision level starts.
+	private final int[] trail = new int[VARIABLES];
+	private int trailSize;
+	private final int[] levelStarts = new int[VARIABLES + 1];
+	private int level;
+	// The next literal on the trail to propagate.
+	private int propagated;
+
+	// Scratch space for conflict analysis.
+	private final boolean[] seen = new boolean[VARIABLES];
+	private final int[] learnt = new int[VARIABLES];
+
+	private long decisions;
+	private long conflicts;
+
+	/**
+	 * Creates a solver.
+	 */
+	SatSolver() {
+		clauses = new int[16384][];
+		for (int lit = 0; lit < watches.length; lit++) {
+			watches[lit] = new int[16];
+		}
+		// Each space holds at least one value, and at most one value.
+		for (int s = 0; s < 9 * 9; s++) {
+			int[] atLeastOne = new int[9];
+			for (int d = 0; d < 9; d++) {
+				atLeastOne[d] = literal(s, d, true);
+				for (int e = d + 1; e < 9; e++) {
+					addClause(literal(s, d, false), literal(s, e, false));
+				}
+			}
+			addClause(atLeastOne);
+		}
+		// Each value occurs at least once in each unit.
+		for (int u = 0; u < 3 * 9; u++) {
+			for (int d = 0; d < 9; d++) {
+				int[] atLeastOnce = new int[9];
+				for (int k = 0; k < 9; k++) {
+					atLeastOnce[k] = literal(GEOMETRY.units[u * 9 + k], d, true);
+				}
+				addClause(atLeastOnce);
+			}
+		}
+		// No two peers hold the same value.
+		for (int s = 0; s < 9 * 9; s++) {
+			for (int p = s * GEOMETRY.peerCount; p < (s + 1) * GEOMETRY.peerCount; p++) {
+				int t = GEOMETRY.peers[p];
+				if (t > s) {
+					for (int d = 0; d < 9; d++) {
+						addClause(literal(s, d, false), literal(t, d, false));
+					}
+				}
+			}
+		}
+		baseClauses = clauseCount;
+	}
+
+	@Override
+	public boolean solve(int[][] puzzle) {
+		// A value out of range has no literal, and the puzzle no solution.
+		for (int s = 0; s < 9 * 9; s++) {
+			int value = puzzle[GEOMETRY.row[s]][GEOMETRY.column[s]];
+			if (value < 0 || value > 9) {
+				return false;
+			}
+		}
+		reset();
+		// The clues are decided at level 0.
+		for (int s = 0; s < 9 * 9; s++) {
+			int value = puzzle[GEOMETRY.row[s]][GEOMETRY.column[s]];
+			if (value != 0) {
+				int lit = literal(s, value - 1, true);
+				if (valueOf(lit) < 0) {
+					return false;
+				}
+				if (valueOf(lit) == 0) {
+					assign(lit, -1);
+				}
+			}
+		}
+		int restarts = 0;
+		long restartAt = RESTART_BASE;
+		while (true) {
+			int conflict = propagate();
+			if (conflict >= 0) {
+				conflicts++;
+				if (level == 0) {
+					return false;
+				}
+				int size = analyze(conflict);
+				backtrack(size == 1 ? 0 : levels[learnt[1] >> 1]);
+				if (size == 1) {
+					assign(learnt[0], -1);
+				} else {
+					int c = addClause(Arrays.copyOf(learnt, size));
+					assign(learnt[0], c);
+				}
+				activityIncrement /= VARIABLE_DECAY;
+			} else {
+				if (conflicts >= restartAt) {
+					backtrack(0);
+					restarts++;
+					restartAt = conflicts + RESTART_BASE * luby(restarts);
+					if (clauseCount - baseClauses > maxLearnts) {
+						reduceLearnts();
+					}
+					continue;
+				}
+				int variable = pickBranchVariable();
+				if (variable < 0) { // all variables assigned: a solution
+					for (int v = 0; v < VARIABLES; v++) {
+						if (values[v] > 0) {
+							int s = v / 9;
+							puzzle[GEOMETRY.row[s]][GEOMETRY.column[s]] = v % 9 + 1;
+						}
+					}
+					return true;
+				}
+				decisions++;
+				levelStarts[++level] = trailSize;
+				assign(2 * variable + (phases[variable] ? 0 : 1), -1);
+			}
+		}
+	}
+
+	/**
+	 * Gets the number of decisions made by the last call to solve().
+	 */
+	@Override
+	public long getNodes() {
+		return decisions;
+	}
+
+	/**
+	 * Gets the number of conflicts, i.e., learnt clauses, of the last call to
+	 * solve().
+	 *
+	 * @return the number of conflicts
+	 */
+	long getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * Clears all assignments and learnt clauses, and rebuilds the watch lists
+	 * of the rules.
+	 */
+	private void reset() {
+		Arrays.fill(values, (byte) 0);
+		Arrays.fill(phases, false); // most variables are false in a solution
+		Arrays.fill(activity, 0);
+		activityIncrement = 1;
+		trailSize = 0;
+		propagated = 0;
+		level = 0;
+		decisions = 0;
+		conflicts = 0;
+		clauseCount = baseClauses;
+		maxLearnts = 2000;
+		// Propagation moves the watched literals of a clause to the front.
+		// Put the rules back in the order they were built in (ascending), so
+		// that each search of a puzzle is the same.
+		for (int c = 0; c < baseClauses; c++) {
+			if (clauses[c].length > 2) {
+				Arrays.sort(clauses[c]);
+			}
+		}
+		rebuildWatches();
+	}
+
+	private void rebuildWatches() {
+		Arrays.fill(watchCount, 0);
+		for (int c = 0; c < clauseCount; c++) {
+			watch(clauses[c][0], c);
+			watch(clauses[c][1], c);
+		}
+	}
+
+	private static int literal(int space, int digit, boolean positive) {
+		return 2 * (9 * space + digit) + (positive ? 0 : 1);
+	}
+
+	/**
+	 * Gets the value of a literal: 1 (true), -1 (false) or 0 (unassigned).
+	 */
+	private int valueOf(int lit) {
+		int value = values[lit >> 1];
+		return (lit & 1) == 0 ? value : -value;
+	}
+
+	private int addClause(int... literals) {
+		if (clauseCount == clauses.length) {
+			clauses = Arrays.copyOf(clauses, 2 * clauses.length);
+		}
+		clauses[clauseCount] = literals;
+		watch(literals[0], clauseCount);
+		watch(literals[1], clauseCount);
+		return clauseCount++;
+	}
+
+	private void watch(int lit, int clause) {
+		if (watchCount[lit] == watches[lit].length) {
+			watches[lit] = Arrays.copyOf(watches[lit], 2 * watches[lit].length);
+		}
+		watches[lit][watchCount[lit]++] = clause;
+	}
+
+	private void assign(int lit, int reason) {
+		int v = lit >> 1;
+		values[v] = (byte) ((lit & 1) == 0 ? 1 : -1);
+		levels[v] = level;
+		reasons[v] = reason;
+		trail[trailSize++] = lit;
+	}
+
+	/**
+	 * Propagates the assignments on the trail through the watched literals.
+	 *
+	 * @return a clause with all literals false, or -1 if there is none
+	 */
+	private int propagate() {
+		while (propagated < trailSize) {
+			int falseLit = trail[propagated++] ^ 1;
+			int[] list = watches[falseLit];
+			int n = watchCount[falseLit];
+			int i = 0, j = 0;
+			while (i < n) {
+				int c = list[i++];
+				int[] clause = clauses[c];
+				// Make sure the false literal is clause[1].
+				if (clause[0] == falseLit) {
+					clause[0] = clause[1];
+					clause[1] = falseLit;
+				}
+				if (valueOf(clause[0]) > 0) { // clause is satisfied
+					list[j++] = c;
+					continue;
+				}
+				// Look for a new literal to watch.
+				boolean moved = false;
+				for (int k = 2; k < clause.length; k++) {
+					if (valueOf(clause[k]) >= 0) {
+						clause[1] = clause[k];
+						clause[k] = falseLit;
+						watch(clause[1], c);
+						moved = true;
+						break;
+					}
+				}
+				if (moved) {
+					continue;
+				}
+				list[j++] = c;
+				if (valueOf(clause[0]) < 0) { // conflict
+					while (i < n) {
+						list[j++] = list[i++];
+					}
+					watchCount[falseLit] = j;
+					propagated = trailSize;
+					return c;
+				}
+				assign(clause[0], c);
+			}
+			watchCount[falseLit] = j;
+		}
+		return -1;
+	}
+
+	/**
+	 * Analyzes a conflict and puts the learnt clause, which is asserting
+	 * after backtracking, in learnt. The asserting literal is learnt[0], and
+	 * learnt[1], if any, has the highest decision level of the rest.
+	 *
+	 * @return the size of the learnt clause
+	 */
+	private int analyze(int conflict) {
+		int size = 1; // learnt[0] is filled in last
+		int pending = 0; // literals of the current level not yet resolved
+		int lit = -1;
+		int index = trailSize - 1;
+		do {
+			int[] clause = clauses[conflict];
+			for (int k = lit < 0 ? 0 : 1; k < clause.length; k++) {
+				int v = clause[k] >> 1;
+				if (!seen[v] && levels[v] > 0) {
+					bump(v);
+					seen[v] = true;
+					if (levels[v] >= level) {
+						pending++;
+					} else {
+						learnt[size++] = clause[k];
+					}
+				}
+			}
+			// The next literal of the current level to resolve on.
+			while (!seen[trail[index] >> 1]) {
+				index--;
+			}
+			lit = trail[index--];
+			conflict = reasons[lit >> 1];
+			seen[lit >> 1] = false;
+			pending--;
+		} while (pending > 0);
+		learnt[0] = lit ^ 1;
+		// Put a literal of the highest level among the rest in learnt[1].
+		int highest = 1;
+		for (int k = 1; k < size; k++) {
+			seen[learnt[k] >> 1] = false;
+			if (levels[learnt[k] >> 1] > levels[learnt[highest] >> 1]) {
+				highest = k;
+			}
+		}
+		if (size > 1) {
+			int tmp = learnt[1];
+			learnt[1] = learnt[highest];
+			learnt[highest] = tmp;
+		}
+		return size;
+	}
+
+	private void bump(int v) {
+		activity[v] += activityIncrement;
+		if (activity[v] > 1e100) { // rescale all activities
+			for (int w = 0; w < VARIABLES; w++) {
+				activity[w] *= 1e-100;
+			}
+			activityIncrement *= 1e-100;
+		}
+	}
+
+	/**
+	 * Undoes all assignments above a decision level.
+	 */
+	private void backtrack(int target) {
+		if (level <= target) {
+			return;
+		}
+		for (int k = trailSize - 1; k >= levelStarts[target + 1]; k--) {
+			int v = trail[k] >> 1;
+			phases[v] = values[v] > 0;
+			values[v] = 0;
+		}
+		trailSize = levelStarts[target + 1];
+		propagated = trailSize;
+		level = target;
+	}
+
+	/**
+	 * Finds the unassigned variable with the highest activity.
+	 *
+	 * @return the variable, or -1 if all variables are assigned
+	 */
+	private int pickBranchVariable() {
+		int best = -1;
+		for (int v = 0; v < VARIABLES; v++) {
+			if (values[v] == 0 && (best < 0 || activity[v] > activity[best])) {
+				best = v;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * Removes the longer half of the learnt clauses. Must be called at level
+	 * 0, where no learnt clause is the reason of an assignment that conflict
+	 * analysis looks at.
+	 */
+	private void reduceLearnts() {
+		assert level == 0;
+		int[][] learnts = Arrays.copyOfRange(clauses, baseClauses, clauseCount);
+		Arrays.sort(learnts, (a, b) -> a.length - b.length);
+		int keep = learnts.length / 2;
+		System.arraycopy(learnts, 0, clauses, baseClauses, keep);
+		Arrays.fill(clauses, baseClauses + keep, clauseCount, null);
+		clauseCount = baseClauses + keep;
+		for (int k = 0; k < trailSize; k++) {
+			reasons[trail[k] >> 1] = -1;
+		}
+		rebuildWatches();
+		maxLearnts += maxLearnts / 10;
+	}
+
+	/**
+	 * Computes the Luby sequence 1, 1, 2, 1, 1, 2, 4, 1, 1, 2, ...
+	 *
+	 * @param x
+	 *            the index in the sequence, starting at 0
+	 * @return the value at that index
+	 */
+	private static long luby(int x) {
+		int size = 1, seq = 0;
+		while (size < x + 1) {
+			seq++;
+			size = 2 * size + 1;
+		}
+		while (size - 1 != x) {
+			size = (size - 1) >> 1;
+			seq--;
+			x = x % size;
+		}
+		return 1L << seq;
+	}
+}
@@ -0,0 +1,296 @@
+package org.wintrisstech.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Records the events of a search to a file, so that a slow solve can be
+ * studied afterwards with {@link TraceReplay}.
+ * <p>
+ * Each event is one long (see {@link #event(int, int, int, int)}). The
+ * solving thread writes the events into a preallocated ring buffer, and a
+ * background thread writes them to the file, so recording an event costs an
+ * array store and does not allocate. If the file can't keep up and the ring
+ * fills, the solving thread waits rather than lose events, because the replay
+ * needs all of them to rebuild the search tree.
+ * <p>
+ * The file starts with {@link #MAGIC}, an int, followed by the events, all
+ * big-endian. Each search records its own seed with its START event, so that
+ * a slow search can be reproduced alone.
+ * <p>
+ * A trace is written by one solving thread at a time. The engines skip all
+ * recording when they have no trace, so tracing costs nothing when it is off.
+ *
+ * @author Erik
+ */
+final class SearchTrace implements Closeable {
+
+	/**
+	 * The first four bytes of a trace file.
+	 */
+	static final int MAGIC = 0x53545243; // "STRC"
+
+	/**
+	 * A new search starts. The value is the number of empty spaces. The event
+	 * is followed by the seed of the search, a long that is not an event.
+	 */
+	static final int START = 0;
+	/**
+	 * The search tries a value in a space.
+	 */
+	static final int DECISION = 1;
+	/**
+	 * Inference fills a space.
+	 */
+	static final int PROPAGATION = 2;
+	/**
+	 * A value tried in a space failed, and is undone.
+	 */
+	static final int BACKTRACK = 3;
+
+	// The default number of events in the ring.
+	private static final int DEFAULT_CAPACITY = 1 << 16;
+	// The number of events the flusher writes at a time.
+	private static final int CHUNK = 1 << 12;
+	// How long the flusher sleeps when the ring is empty.
+	private static final long FLUSH_INTERVAL_NANOS = 1000000;
+
+	private final long[] ring;
+	private final int mask;
+	private final FileChannel channel;
+	private final Thread flusher;
+	// The number of events recorded. Only the solving thread writes it.
+	private long head;
+	// The number of events that may be recorded before the ring is full, as
+	// last seen by the solving thread.
+	private long limit;
+	// The number of events the flusher may read.
+	private final AtomicLong published = new AtomicLong();
+	// The number of events the flusher is done with.
+	private final AtomicLong flushed = new AtomicLong();
+	private volatile boolean closed;
+	// The first error of the flusher, reported by close().
+	private volatile IOException error;
+
+	/**
+	 * Creates a trace file with a ring of the default size.
+	 *
+	 * @param file
+	 *            the file to write. An existing file is replaced.
+	 * @return the trace
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	static SearchTrace open(Path file) throws IOException {
+		return open(file, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates a trace file.
+	 *
+	 * @param file
+	 *            the file to write. An existing file is replaced.
+	 * @param capacity
+	 *            the number of events in the ring, a power of 2
+	 * @return the trace
+	 * @throws IOException
+	 *             if the file can't be created
+	 */
+	static SearchTrace open(Path file, int capacity) throws IOException {
+		if (capacity <= 0 || (capacity & (capacity - 1)) != 0) {
+			throw new IllegalArgumentException("Capacity must be a power of 2: " + capacity);
+		}
+		FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+		try {
+			ByteBuffer header = ByteBuffer.allocate(4);
+			header.putInt(MAGIC).flip();
+			while (header.hasRemaining()) {
+				channel.write(header);
+			}
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		return new SearchTrace(channel, capacity);
+	}
+
+	private SearchTrace(FileChannel channel, int capacity) {
+		this.channel = channel;
+		ring = new long[capacity];
+		mask = capacity - 1;
+		limit = capacity;
+		flusher = new Thread(this::flush, "SearchTrace flusher");
+		flusher.setDaemon(true);
+		flusher.start();
+	}
+
+	/**
+	 * Encodes an event.
+	 *
+	 * @param type
+	 *            one of START, DECISION, PROPAGATION and BACKTRACK
+	 * @param depth
+	 *            the number of decisions on the path to the node of the event
+	 * @param space
+	 *            the space, numbered as in Geometry
+	 * @param value
+	 *            the value
+	 * @return the event
+	 */
+	static long event(int type, int depth, int space, int value) {
+		return (long) type << 56 | (long) depth << 32 | space << 16 | value;
+	}
+
+	static int type(long event) {
+		return (int) (event >>> 56);
+	}
+
+	static int depth(long event) {
+		return (int) (event >>> 32) & 0xffffff;
+	}
+
+	static int space(long event) {
+		return (int) event >>> 16;
+	}
+
+	static int value(long event) {
+		return (int) event & 0xffff;
+	}
+
+	/**
+	 * Records that a new search starts.
+	 *
+	 * @param emptySpaces
+	 *            the number of empty spaces of the puzzle
+	 * @param seed
+	 *            the seed of the search, for reproducing it, or 0 if the search
+	 *            doesn't depend on one
+	 */
+	void start(int emptySpaces, long seed) {
+		record(event(START, 0, 0, emptySpaces));
+		record(seed);
+	}
+
+	/**
+	 * Records that the search tries a value in a space.
+	 *
+	 * @param depth
+	 *            the number of decisions on the path, including this one
+	 */
+	void decision(int depth, int space, int value) {
+		record(event(DECISION, depth, space, value));
+	}
+
+	/**
+	 * Records that inference fills a space.
+	 *
+	 * @param depth
+	 *            the number of decisions on the path
+	 */
+	void propagation(int depth, int space, int value) {
+		record(event(PROPAGATION, depth, space, value));
+	}
+
+	/**
+	 * Records that a decision failed.
+	 *
+	 * @param depth
+	 *            the depth of the decision
+	 */
+	void backtrack(int depth, int space, int value) {
+		record(event(BACKTRACK, depth, space, value));
+	}
+
+	private void record(long event) {
+		if (head == limit) {
+			awaitSpace();
+		}
+		ring[(int) head & mask] = event;
+		published.lazySet(++head);
+	}
+
+	/**
+	 * Waits until the flusher has made room in the ring.
+	 */
+	private void awaitSpace() {
+		while ((limit = flushed.get() + ring.length) == head) {
+			LockSupport.unpark(flusher);
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * The loop of the flusher thread. It writes the published events to the
+	 * file until the trace is closed and all events are written.
+	 */
+	private void flush() {
+		ByteBuffer buffer = ByteBuffer.allocateDirect(8 * CHUNK);
+		long done = 0;
+		while (true) {
+			boolean last = closed; // read before published, see close()
+			long end = published.get();
+			if (done == end) {
+				if (last) {
+					return;
+				}
+				LockSupport.parkNanos(FLUSH_INTERVAL_NANOS);
+				continue;
+			}
+			end = Math.min(end, done + CHUNK);
+			buffer.clear();
+			for (long k = done; k < end; k++) {
+				buffer.putLong(ring[(int) k & mask]);
+			}
+			buffer.flip();
+			try {
+				while (error == null && buffer.hasRemaining()) {
+					channel.write(buffer);
+				}
+			} catch (IOException e) {
+				// Keep draining the ring, so the solving thread doesn't block.
+				error = e;
+			}
+			done = end;
+			flushed.lazySet(done);
+		}
+	}
+
+	/**
+	 * Writes the remaining events and closes the file. Must be called by the
+	 * solving thread, or after it is done.
+	 *
+	 * @throws IOException
+	 *             if the events could not be written
+	 */
+	@Override
+	public void close() throws IOException {
+		if (closed) {
+			return;
+		}
+		published.set(head);
+		closed = true;
+		LockSupport.unpark(flusher);
+		boolean interrupted = false;
+		while (flusher.isAlive()) {
+			try {
+				flusher.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+		channel.close();
+		if (error != null) {
+			throw error;
+		}
+	}
+}
@@ -0,0 +1,447 @@
+package org.wintrisstech.sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * An embedded, append-only store of solved puzzles, so that a puzzle only has
+ * to be solved once.
+ * <p>
+ * The store is a directory with two files:
+ * <ul>
+ * <li><code>solutions.dat</code> holds the records, one after the other. A
+ * record is a puzzle followed by its solution, each packed 4 bits per space
+ * into 41 bytes.
+ * <li><code>solutions.idx</code> is a hash index of the records, keyed by the
+ * packed puzzle. It is an open addressing table of 8-byte slots, and it is
+ * memory-mapped, so lookups don't load the index onto the heap. Each slot
+ * holds a record number and some bits of the hash of the puzzle, so that most
+ * mismatches are rejected without reading the record.
+ * </ul>
+ * The records are the primary data. The index can always be rebuilt from
+ * them, and it is, when the store is opened, if the index is missing or
+ * behind. The index is also rebuilt, with twice the capacity, when it is 3/4
+ * full.
+ * <p>
+ * A store may be used by many threads at once. Lookups run concurrently;
+ * additions are serialized. Only one process may have a store open at a time,
+ * which is enforced with a lock on <code>solutions.dat</code>.
+ *
+ * @author Erik
+ */
+public final class SolutionStore implements Closeable {
+
+	// The number of bytes of a packed grid.
+	private static final int GRID_SIZE = (9 * 9 + 1) / 2;
+	// The number of bytes of a record: a packed puzzle and its solution.
+	private static final int RECORD_SIZE = 2 * GRID_SIZE;
+	// Identifies an index file.
+	private static final int MAGIC = 0x53554458; // "SUDX"
+	// The size of the index header: magic, log2(capacity) and record count.
+	private static final int HEADER_SIZE = 16;
+	// The number of slots in each mapped segment of the index file.
+	private static final int SEGMENT_BITS = 27;
+	private static final int SEGMENT_SLOTS = 1 << SEGMENT_BITS;
+	// The smallest index has 2^MIN_CAPACITY_BITS slots.
+	private static final int MIN_CAPACITY_BITS = 10;
+	// A slot holds the record number + 1 in its low RECORD_BITS bits.
+	private static final int RECORD_BITS = 40;
+	private static final long RECORD_MASK = (1L << RECORD_BITS) - 1;
+
+	private final Path dataPath;
+	private final Path indexPath;
+	private final FileChannel data;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// The number of records in the data file.
+	private long count;
+	// The index, and its capacity as a power of 2.
+	private FileChannel index;
+	private MappedByteBuffer header;
+	private MappedByteBuffer[] segments;
+	private int capacityBits;
+
+	private SolutionStore(Path directory) throws IOException {
+		dataPath = directory.resolve("solutions.dat");
+		indexPath = directory.resolve("solutions.idx");
+		data = FileChannel.open(dataPath, StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		// Two stores appending to the same files would overwrite each other's
+		// records and indexes. The lock is released when data is closed.
+		FileLock fileLock;
+		try {
+			fileLock = data.tryLock();
+		} catch (OverlappingFileLockException ex) { // held by this process
+			data.close();
+			throw new IOException("Store is already open: " + directory, ex);
+		} catch (IOException ex) {
+			data.close();
+			throw ex;
+		}
+		if (fileLock == null) {
+			data.close();
+			throw new IOException("Store is open in another process: " + directory);
+		}
+	}
+
+	/**
+	 * Opens a store, creating it if it doesn't exist.
+	 *
+	 * @param directory
+	 *            the directory of the store. It is created if necessary.
+	 * @return the store
+	 * @throws IOException
+	 *             if the store cannot be opened, e.g., because it is already
+	 *             open, in this or another process
+	 */
+	public static SolutionStore open(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		SolutionStore store = new SolutionStore(directory);
+		try {
+			store.recover();
+		} catch (IOException | RuntimeException ex) {
+			store.close();
+			throw ex;
+		}
+		return store;
+	}
+
+	/**
+	 * Looks up the solution of a puzzle.
+	 *
+	 * @param puzzle
+	 *            the puzzle. It is not modified.
+	 * @return a new array holding the solution, or null if the puzzle is not
+	 *         in the store
+	 * @throws IOException
+	 *             if the store cannot be read
+	 */
+	public int[][] get(int[][] puzzle) throws IOException {
+		byte[] key = pack(puzzle, new byte[GRID_SIZE], 0);
+		lock.readLock().lock();
+		try {
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			if (find(key, hash(key, 0), record) < 0) {
+				return null;
+			}
+			return unpack(record.array(), GRID_SIZE);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds a puzzle and its solution to the store, unless the puzzle is
+	 * already in it.
+	 *
+	 * @param puzzle
+	 *            the puzzle. It is not modified.
+	 * @param solution
+	 *            the solution of the puzzle. It is not modified.
+	 * @return true if the puzzle was added, or false if it was already in the
+	 *         store
+	 * @throws IOException
+	 *             if the store cannot be written
+	 */
+	public boolean put(int[][] puzzle, int[][] solution) throws IOException {
+		byte[] record = new byte[RECORD_SIZE];
+		pack(puzzle, record, 0);
+		pack(solution, record, GRID_SIZE);
+		long hash = hash(record, 0);
+		lock.writeLock().lock();
+		try {
+			if (find(record, hash, ByteBuffer.allocate(RECORD_SIZE)) >= 0) {
+				return false;
+			}
+			if ((count + 1) << 2 > 3L << capacityBits) { // more than 3/4 full
+				rebuildIndex(capacityBits + 1);
+			}
+			ByteBuffer buffer = ByteBuffer.wrap(record);
+			long position = count * RECORD_SIZE;
+			while (buffer.hasRemaining()) {
+				position += data.write(buffer, position);
+			}
+			insert(hash, count);
+			count++;
+			header.putLong(8, count);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Gets the number of puzzles in the store.
+	 *
+	 * @return the number of puzzles
+	 */
+	public long size() {
+		lock.readLock().lock();
+		try {
+			return count;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Writes all changes to disk and closes the store.
+	 */
+	@Override
+	public void close() throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (header != null) {
+				header.force();
+				for (MappedByteBuffer segment : segments) {
+					segment.force();
+				}
+				header = null;
+				segments = null;
+			}
+			try {
+				if (index != null) {
+					index.close();
+				}
+			} finally {
+				data.force(false);
+				data.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Brings the store into a consistent state after it has been opened:
+	 * drops a partially written last record, if any, and makes sure that the
+	 * index covers all the records.
+	 */
+	private void recover() throws IOException {
+		count = data.size() / RECORD_SIZE;
+		if (data.size() != count * RECORD_SIZE) {
+			data.truncate(count * RECORD_SIZE);
+		}
+		long indexed = -1;
+		if (Files.exists(indexPath)) {
+			mapIndex();
+			if (header.getInt(0) == MAGIC) {
+				indexed = header.getLong(8);
+			}
+		}
+		if (indexed < 0 || indexed > count
+				|| count << 2 > 3L << capacityBits) {
+			int bits = MIN_CAPACITY_BITS;
+			while (count << 2 > 3L << bits) {
+				bits++;
+			}
+			rebuildIndex(bits);
+		} else {
+			for (long r = indexed; r < count; r++) {
+				ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+				read(r, record);
+				insert(hash(record.array(), 0), r);
+			}
+			header.putLong(8, count);
+		}
+	}
+
+	/**
+	 * Builds a new index of all the records and replaces the current index
+	 * with it.
+	 *
+	 * @param bits
+	 *            the capacity of the new index, as a power of 2
+	 */
+	private void rebuildIndex(int bits) throws IOException {
+		Path tmpPath = indexPath.resolveSibling(indexPath.getFileName()
+				+ ".tmp");
+		Files.deleteIfExists(tmpPath);
+		if (index != null) {
+			index.close();
+			index = null;
+			header = null;
+			segments = null;
+		}
+		try (FileChannel channel = FileChannel.open(tmpPath,
+				StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+				StandardOpenOption.WRITE)) {
+			ByteBuffer initial = ByteBuffer.allocate(HEADER_SIZE);
+			initial.putInt(0, MAGIC).putInt(4, bits).putLong(8, 0);
+			channel.write(initial, 0);
+			channel.write(ByteBuffer.allocate(1), HEADER_SIZE + (8L << bits)
+					- 1); // extend the file with zeros (empty slots)
+		}
+		Files.move(tmpPath, indexPath, StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+		mapIndex();
+		// Scan the records in large blocks and index them.
+		ByteBuffer block = ByteBuffer.allocate(RECORD_SIZE * 4096);
+		for (long r = 0; r < count;) {
+			block.clear();
+			long n = Math.min(count - r, block.capacity() / RECORD_SIZE);
+			block.limit((int) n * RECORD_SIZE);
+			long position = r * RECORD_SIZE;
+			while (block.hasRemaining()) {
+				int read = data.read(block, position);
+				if (read < 0) {
+					throw new IOException("Unexpected end of " + dataPath);
+				}
+				position += read;
+			}
+			for (int k = 0; k < n; k++) {
+				insert(hash(block.array(), k * RECORD_SIZE), r + k);
+			}
+			r += n;
+		}
+		header.putLong(8, count);
+	}
+
+	/**
+	 * Maps the index file.
+	 */
+	private void mapIndex() throws IOException {
+		index = FileChannel.open(indexPath, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		header = index.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+		capacityBits = header.getInt(4);
+		if (header.getInt(0) != MAGIC || capacityBits < MIN_CAPACITY_BITS
+				|| capacityBits > 62 - 3
+				|| index.size() != HEADER_SIZE + (8L << capacityBits)) {
+			header.putInt(0, 0); // not a valid index; rebuild it
+			capacityBits = MIN_CAPACITY_BITS;
+			segments = new MappedByteBuffer[0];
+			return;
+		}
+		long slots = 1L << capacityBits;
+		segments = new MappedByteBuffer[(int) ((slots + SEGMENT_SLOTS - 1) >> SEGMENT_BITS)];
+		for (int s = 0; s < segments.length; s++) {
+			long size = 8 * Math.min(SEGMENT_SLOTS, slots - ((long) s << SEGMENT_BITS));
+			segments[s] = index.map(FileChannel.MapMode.READ_WRITE,
+					HEADER_SIZE + ((long) s << (SEGMENT_BITS + 3)), size);
+		}
+	}
+
+	/**
+	 * Finds the record of a puzzle.
+	 *
+	 * @param key
+	 *            an array that starts with the packed puzzle
+	 * @param hash
+	 *            the hash of the packed puzzle
+	 * @param record
+	 *            a buffer that receives the record, if found
+	 * @return the record number, or -1 if the puzzle is not in the store
+	 */
+	private long find(byte[] key, long hash, ByteBuffer record)
+			throws IOException {
+		long mask = (1L << capacityBits) - 1;
+		long fingerprint = hash >>> RECORD_BITS;
+		for (long slot = hash & mask;; slot = (slot + 1) & mask) {
+			long entry = getSlot(slot);
+			if (entry == 0) {
+				return -1;
+			}
+			if (entry >>> RECORD_BITS == fingerprint) {
+				long r = (entry & RECORD_MASK) - 1;
+				read(r, record);
+				if (startsWith(record.array(), key)) {
+					return r;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Adds a record to the index. The index must have an empty slot.
+	 */
+	private void insert(long hash, long recordNumber) {
+		long mask = (1L << capacityBits) - 1;
+		long slot = hash & mask;
+		while (getSlot(slot) != 0) {
+			slot = (slot + 1) & mask;
+		}
+		segments[(int) (slot >>> SEGMENT_BITS)].putLong(
+				(int) (slot & (SEGMENT_SLOTS - 1)) << 3,
+				hash >>> RECORD_BITS << RECORD_BITS | (recordNumber + 1));
+	}
+
+	private long getSlot(long slot) {
+		return segments[(int) (slot >>> SEGMENT_BITS)]
+				.getLong((int) (slot & (SEGMENT_SLOTS - 1)) << 3);
+	}
+
+	/**
+	 * Reads a record into a buffer.
+	 */
+	private void read(long recordNumber, ByteBuffer record) throws IOException {
+		record.clear();
+		long position = recordNumber * RECORD_SIZE;
+		while (record.hasRemaining()) {
+			int n = data.read(record, position);
+			if (n < 0) {
+				throw new IOException("Unexpected end of " + dataPath);
+			}
+			position += n;
+		}
+	}
+
+	private static boolean startsWith(byte[] record, byte[] key) {
+		for (int k = 0; k < GRID_SIZE; k++) {
+			if (record[k] != key[k]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes a 64-bit hash of a packed grid (FNV-1a followed by a mixing
+	 * step, so that the low bits, which pick the slot, depend on all bytes).
+	 */
+	private static long hash(byte[] bytes, int offset) {
+		long h = 0xcbf29ce484222325L;
+		for (int k = offset; k < offset + GRID_SIZE; k++) {
+			h = (h ^ (bytes[k] & 0xff)) * 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		return h ^ h >>> 33;
+	}
+
+	/**
+	 * Packs a grid, 4 bits per space, the first space in the high bits of the
+	 * first byte.
+	 */
+	private static byte[] pack(int[][] grid, byte[] bytes, int offset) {
+		for (int k = 0; k < 9 * 9; k++) {
+			int value = grid[k / 9][k % 9];
+			if (value < 0 || value > 9) {
+				throw new IllegalArgumentException("Illegal value " + value);
+			}
+			bytes[offset + k / 2] |= (k & 1) == 0 ? value << 4 : value;
+		}
+		return bytes;
+	}
+
+	private static int[][] unpack(byte[] bytes, int offset) {
+		int[][] grid = new int[9][9];
+		for (int k = 0; k < 9 * 9; k++) {
+			int b = bytes[offset + k / 2];
+			grid[k / 9][k % 9] = ((k & 1) == 0 ? b >> 4 : b) & 0xf;
+		}
+		return grid;
+	}
+}
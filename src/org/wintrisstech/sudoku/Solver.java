@@ -7,32 +7,50 @@ import java.util.Random;
  * 
  * @author Erik
  */
-class Solver implements Runnable {
+class Solver implements Runnable, SudokuEngine {
 
 	// An exception thrown when proving that a puzzle has no solution fails.
+	// It is thrown once per solved puzzle, so skip the (deep) stack trace.
 	@SuppressWarnings("serial")
 	private static class SudokuException extends Exception {
+		@Override
+		public synchronized Throwable fillInStackTrace() {
+			return this;
+		}
 	};
 
 	// The puzzle that is being solved. A 0 represents an empty space
 	private int puzzle[][];
+	// The values of the spaces while solving, numbered as in Geometry.
+	private int[] values = new int[Geometry.STANDARD.cells];
 	// A counter
 	private int iterations = 0;
 	// Set to true when done
 	private boolean done = false;
+	// The lookup tables for the rows, columns and peers of the spaces.
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+	private static final short[] PEERS = GEOMETRY.peers;
+	private static final int PEER_COUNT = GEOMETRY.peerCount;
 	/*
-	 * A one-dimensional array of all the index pairs of the spaces in the
-	 * puzzle. The order in which these pairs occur is not significant, and the
-	 * array may be shuffled to randomize the solution process. Each (row, col)
-	 * pair is represented by an int which, when represented in hexadecimal, has
-	 * two digits where the first digit is the row, and the second digit is the
-	 * column.
+	 * A one-dimensional array of all the spaces in the puzzle, numbered as in
+	 * Geometry. The order in which these spaces occur is not significant, and
+	 * the array may be shuffled to randomize the solution process.
 	 */
-	private int[] puzzleSpaces = new int[9 * 9];
+	private int[] puzzleSpaces = new int[GEOMETRY.cells];
 	// The first empty space in the spaces array.
 	private int firstEmpty;
+	// The first empty space when the search started.
+	private int clues;
 
-	private Random random = new Random();
+	// Chooses the seed of each search.
+	private final Random seeds = new Random();
+	// The seed of the random shuffle of the last search, or of the next one
+	// if it was set by setSeed().
+	private long seed;
+	private boolean seedIsSet;
+	private final Random random = new Random();
+	// The trace of the search, or null when it is not traced.
+	private SearchTrace trace;
 
 	/**
 	 * Solves a SudokuGUI puzzle.
@@ -45,15 +63,64 @@ class Solver implements Runnable {
 	@Override
 	public void run() {
 		long startTime = System.currentTimeMillis();
+		try {
+			if (solve()) {
+				System.out.println("This puzzle has a solution:");
+				System.out.println("Number of iterations = " + iterations);
+			} else {
+				System.out.println("This puzzle has no solutions.");
+			}
+			System.out.println("Seed = " + seed);
+		} finally {
+			done = true;
+			System.out.println("Time used = "
+					+ (System.currentTimeMillis() - startTime) + " ms.");
+		}
+
+	}
+
+	/**
+	 * Solves a puzzle without printing anything. The same Solver may be used
+	 * for any number of puzzles, one at a time.
+	 * <p>
+	 * Post-condition: If there is a solution, the puzzle argument is filled
+	 * with it. Otherwise, the puzzle argument is unchanged.
+	 * 
+	 * @param puzzle
+	 *            the puzzle to solve. A 0 represents an empty space.
+	 * @return true if, and only if, the puzzle has a solution.
+	 */
+	@Override
+	public boolean solve(int[][] puzzle) {
+		setPuzzle(puzzle);
+		return solve();
+	}
+
+	/**
+	 * Solves the puzzle set by setPuzzle().
+	 * 
+	 * @return true if, and only if, the puzzle has a solution. A puzzle with
+	 *         a value out of range, or with the same value twice in a row,
+	 *         column or region, has none.
+	 */
+	private boolean solve() {
 		// Initialize the puzzleSpaces array:
-		for (int i = 0, k = 0; i < 9; i++) {
-			for (int j = 0; j < 9; j++, k++) {
-				assert k == 9 * i + j;
-				puzzleSpaces[k] = i << 4 | j;
+		for (int k = 0; k < puzzleSpaces.length; k++) {
+			puzzleSpaces[k] = k;
+			values[k] = puzzle[GEOMETRY.row[k]][GEOMETRY.column[k]];
+			if (values[k] < 0 || values[k] > 9) {
+				return false;
+			}
+		}
+		// The search assumes that the clues don't conflict, so check them.
+		for (int k = 0; k < values.length; k++) {
+			if (!isEmpty(k) && (usedValues(k) & 1 << values[k]) != 0) {
+				return false;
 			}
 		}
 		firstEmpty = 0;
-		while (!isEmpty(puzzleSpaces[firstEmpty])) {
+		while (firstEmpty < puzzleSpaces.length
+				&& !isEmpty(puzzleSpaces[firstEmpty])) {
 			firstEmpty++;
 		}
 		// Move all the non-empty spaces to the beginning of puzzleSpaces
@@ -68,26 +135,33 @@ class Solver implements Runnable {
 				firstEmpty++;
 			}
 		}
-		// Shuffle the empty spaces
+		// Shuffle the empty spaces, with a seed of its own for each search,
+		// so that any one search can be reproduced alone.
+		if (!seedIsSet) {
+			seed = seeds.nextLong();
+		}
+		seedIsSet = false;
+		random.setSeed(seed);
 		for (int k = firstEmpty; k < puzzleSpaces.length; k++) {
 			int randomIndex = random.nextInt(puzzleSpaces.length - k) + k;
 			int tmp = puzzleSpaces[k];
 			puzzleSpaces[k] = puzzleSpaces[randomIndex];
 			puzzleSpaces[randomIndex] = tmp;
 		}
+		clues = firstEmpty;
+		if (trace != null) {
+			trace.start(puzzleSpaces.length - clues, seed);
+		}
 		// Get down to work...
 		try {
 			proveImpossible();
-			System.out.println("This puzzle has no solutions.");
+			return false;
 		} catch (SudokuException ex) {
-			System.out.println("This puzzle has a solution:");
-			System.out.println("Number of iterations = " + iterations);
-		} finally {
-			done = true;
-			System.out.println("Time used = "
-					+ (System.currentTimeMillis() - startTime) + " ms.");
+			for (int k = 0; k < values.length; k++) {
+				puzzle[GEOMETRY.row[k]][GEOMETRY.column[k]] = values[k];
+			}
+			return true;
 		}
-
 	}
 
 	/**
@@ -98,7 +172,7 @@ class Solver implements Runnable {
 	 * @return true if the space is empty, i.e., the value is 0.
 	 */
 	private boolean isEmpty(int space) {
-		return puzzle[space >> 4][space & 0xf] == 0;
+		return values[space] == 0;
 	}
 
 	/**
@@ -109,38 +183,43 @@ class Solver implements Runnable {
 	 * <p>
 	 * Post-condition: If this method exits normally (i.e., without throwing an
 	 * exception), the puzzle with the assignment of values when this method is
-	 * called is impossible to solve. The variable puzzle is in the same state
+	 * called is impossible to solve. The variable values is in the same state
 	 * as prior to the invocation of this method.
 	 * <p>
 	 * 
 	 * @throws SudokuException
 	 *             if it fails to prove that there is no solution. In this case,
-	 *             the variable puzzle contains the solution.
+	 *             the variable values contains the solution.
 	 */
 	private void proveImpossible() throws SudokuException {
 		int space = findEmptySpace(); // Throws an exception if no empty space
 										// is found.
 		firstEmpty++;
-		int row = space >> 4;
-		int col = space & 0xf;
+		int used = usedValues(space);
 		for (int value = 1; value < 10; value++) {
-			if (possible(row, col, value)) {
-				puzzle[row][col] = value;
+			if ((used & 1 << value) == 0) {
+				values[space] = value;
 				// For animation purposes, add some sleep time here.
 				iterations++;
+				if (trace != null) {
+					trace.decision(firstEmpty - clues, space, value);
+				}
 				proveImpossible();
+				if (trace != null) {
+					trace.backtrack(firstEmpty - clues, space, value);
+				}
 			}
 		}
 		// Following code lines are to ensure that the puzzle is in the same
 		// state as prior to the invocation of this method.
 		firstEmpty--;
-		puzzle[row][col] = 0;
+		values[space] = 0;
 	}
 
 	/**
 	 * Returns an empty space in the puzzle, if any.
 	 * <p>
-	 * Post-cond: Variable puzzle in same state as prior to call.
+	 * Post-cond: Variable values in same state as prior to call.
 	 * 
 	 * @return an int representing an empty space in the puzzle
 	 * @throws SudokuException
@@ -160,20 +239,15 @@ class Solver implements Runnable {
 		int minPossibilities = 10;
 		// Find a space with minimum number of possibilities
 		int index = -1; // index of the space to return
-		int row, col;
 		for (int k = firstEmpty; k < puzzleSpaces.length; k++) {
-			row = puzzleSpaces[k] >> 4;
-			col = puzzleSpaces[k] & 0xf;
 			// count the possibilities
-			int possibilities = 0;
-			for (int n = 1; n < 10; n++) {
-				if (possible(row, col, n)) {
-					possibilities++;
-				}
-			}
+			int possibilities = 9 - Integer.bitCount(usedValues(puzzleSpaces[k]));
 			if (possibilities < minPossibilities) {
 				minPossibilities = possibilities;
 				index = k;
+				if (possibilities == 0) { // can't do better than a dead end
+					break;
+				}
 			}
 		}
 		if (index == -1) { // No empty space found
@@ -187,41 +261,24 @@ class Solver implements Runnable {
 	}
 
 	/**
-	 * Tests whether assigning number to puzzle[row][column] introduces the
-	 * number twice in the same row, column or region.
-	 * <p>
-	 * Pre-cond: puzzle[row][column] == 0 and 1 &le; number &le; 9
+	 * Finds the numbers that can't be assigned to a space without introducing
+	 * a duplicate in the same row, column or region.
 	 * <p>
 	 * Post-cond: No side effects
 	 * 
-	 * @param row
-	 *            - row number between 0 and 8
-	 * @param column
-	 *            - column number between 0 and 8
-	 * @param number
-	 *            - a number between 1 and 9.
-	 * @return true if, and only if, assigning puzzle[row][column] = number will
-	 *         not introduce a duplicate.
+	 * @param space
+	 *            - a space, numbered as in Geometry
+	 * @return a bit mask where bit n is set if, and only if, a peer of the
+	 *         space holds the number n. Bit 0 is never set.
 	 */
-	private boolean possible(int row, int column, int number) {
-		// Check row and column:
-		for (int k = 0; k < 9; k++) {
-			if (puzzle[row][k] == number || puzzle[k][column] == number) {
-				return false;
-			}
-		}
-		// Check region:
-		int i0 = row - row % 3; // first row index in region
-		int j0 = column / 3 * 3; // first column index in region
-		for (int i = i0; i < i0 + 3; i++) {
-			for (int j = j0; j < j0 + 3; j++) {
-				if (puzzle[i][j] == number) {
-					return false;
-				}
-			}
+	private int usedValues(int space) {
+		// Collect the values of the peers, i.e., the other spaces in the row,
+		// column and region:
+		int used = 0;
+		for (int p = space * PEER_COUNT, end = p + PEER_COUNT; p < end; p++) {
+			used |= 1 << values[PEERS[p]];
 		}
-		// No duplicates found in row, column or region:
-		return true;
+		return used & ~1; // empty peers don't use anything
 	}
 
 	/**
@@ -239,6 +296,52 @@ class Solver implements Runnable {
 		this.done = false;
 	}
 
+	/**
+	 * Sets the seed of the random order in which the solver visits the spaces
+	 * in the next search. The seeds of the searches after it are chosen from
+	 * it, so a solver with a given seed searches the same way each time it is
+	 * given the same sequence of puzzles. A search is also reproduced alone
+	 * by setting the seed that getSeed() returned for it.
+	 * 
+	 * @param seed
+	 *            the seed
+	 */
+	void setSeed(long seed) {
+		this.seed = seed;
+		seedIsSet = true;
+		seeds.setSeed(seed);
+	}
+
+	/**
+	 * Gets the seed of the random order in which the solver visited the
+	 * spaces in the last search, or will visit them in the next search if it
+	 * was set by setSeed(). Unless they are set by setSeed(), the seeds are
+	 * chosen at random.
+	 * 
+	 * @return the seed
+	 */
+	long getSeed() {
+		return seed;
+	}
+
+	/**
+	 * Sets the trace that records the events of the following searches.
+	 * 
+	 * @param trace
+	 *            the trace, or null to stop tracing
+	 */
+	void setTrace(SearchTrace trace) {
+		this.trace = trace;
+	}
+
+	/**
+	 * Gets the number of values tried by the last search.
+	 */
+	@Override
+	public long getNodes() {
+		return iterations;
+	}
+
 	/**
 	 * Test if the solver has completed.
 	 * 
@@ -15,6 +15,12 @@ class Solver2 implements Runnable {
 	private int iterations = 0;
 	// Set to true when done
 	private boolean done = false;
+	// The lookup tables for the rows, columns and peers of the spaces.
+	private static final Geometry GEOMETRY = Geometry.STANDARD;
+	private static final byte[] ROW = GEOMETRY.row;
+	private static final byte[] COLUMN = GEOMETRY.column;
+	private static final short[] PEERS = GEOMETRY.peers;
+	private static final int PEER_COUNT = GEOMETRY.peerCount;
 	/**
 	 * An array of all the spaces in the <code>puzzle</code>. After this array
 	 * is initialized, each entry references a space in the <code>puzzle</code>.
@@ -23,14 +29,14 @@ class Solver2 implements Runnable {
 	 * row and column of the space that <code>spaces[index]</code> references
 	 * are
 	 * <ul>
-	 * <li> <code>row == spaces[index] / 9</code>, and
-	 * <li> <code>column == spaces[index] % 9</code>.
+	 * <li> <code>row == ROW[spaces[index]]</code>, and
+	 * <li> <code>column == COLUMN[spaces[index]]</code>.
 	 * </ul>
 	 * Each space in the <code>puzzle</code> is referenced exactly once. Filled
 	 * spaces precede empty spaces, but otherwise there is no particular order
 	 * to entries in <code>spaces</code>.
 	 */
-	private int[] spaces = new int[9 * 9];
+	private int[] spaces = new int[GEOMETRY.cells];
 	/*
 	 * An index into the spaces array.
 	 */
@@ -73,7 +79,7 @@ class Solver2 implements Runnable {
 		// a clue at the front of the spaces array.
 		int numClues = 0;
 		for (int k = 0; k < spaces.length; k++) {
-			if (puzzle[spaces[k] / 9][spaces[k] % 9] != 0) { // clue found
+			if (puzzle[ROW[spaces[k]]][COLUMN[spaces[k]]] != 0) { // clue found
 				// swap the place containing a clue to the front of the spaces
 				// array
 				int tmp = spaces[numClues];
@@ -121,11 +127,12 @@ class Solver2 implements Runnable {
          */
 		while (numClues <= index && index < spaces.length) {
 			iterations++;
-			int i = spaces[index] / 9;
-			int j = spaces[index] % 9;
+			int i = ROW[spaces[index]];
+			int j = COLUMN[spaces[index]];
 			boolean foundPossibleValue = false;
+			int used = usedValues(spaces[index]);
 			for (int value = puzzle[i][j] + 1; value <= 9; value++) {
-				if (possible(i, j, value)) {
+				if ((used & 1 << value) == 0) {
 					foundPossibleValue = true;
 					puzzle[i][j] = value;
 					index++;
@@ -150,15 +157,8 @@ class Solver2 implements Runnable {
 		int minIndex = -1;
 		int minPossibilities = 10;
 		for (int k = index; k < spaces.length; k++) {
-			int i = spaces[k] / 9;
-			int j = spaces[k] % 9;
-			assert puzzle[i][j] == 0;
-			int possibilities = 0;
-			for (int value = 1; value <= 9; value++) {
-				if (possible(i, j, value)) {
-					possibilities++;
-				}
-			}
+			assert puzzle[ROW[spaces[k]]][COLUMN[spaces[k]]] == 0;
+			int possibilities = 9 - Integer.bitCount(usedValues(spaces[k]));
 			if (possibilities < minPossibilities) {
 				minIndex = k;
 				minPossibilities = possibilities;
@@ -173,41 +173,25 @@ class Solver2 implements Runnable {
 	}
 
 	/**
-	 * Tests whether assigning number to puzzle[row][column] introduces the
-	 * number twice in the same row, column or region.
-	 * <p>
-	 * Pre-cond: puzzle[row][column] == 0 and 1 &le; number &le; 9
+	 * Finds the numbers that can't be assigned to a space without introducing
+	 * a duplicate in the same row, column or region.
 	 * <p>
 	 * Post-cond: No side effects
 	 * 
-	 * @param row
-	 *            - row number between 0 and 8
-	 * @param column
-	 *            - column number between 0 and 8
-	 * @param number
-	 *            - a number between 1 and 9.
-	 * @return true if, and only if, assigning puzzle[row][column] = number will
-	 *         not introduce a duplicate.
+	 * @param space
+	 *            - a space, numbered as in Geometry
+	 * @return a bit mask where bit n is set if, and only if, a peer of the
+	 *         space holds the number n. Bit 0 is never set.
 	 */
-	private boolean possible(int row, int column, int number) {
-		// Check row and column:
-		for (int k = 0; k < 9; k++) {
-			if (puzzle[row][k] == number || puzzle[k][column] == number) {
-				return false;
-			}
-		}
-		// Check region:
-		int i0 = row - row % 3; // first row index in region
-		int j0 = column / 3 * 3; // first column index in region
-		for (int i = i0; i < i0 + 3; i++) {
-			for (int j = j0; j < j0 + 3; j++) {
-				if (puzzle[i][j] == number) {
-					return false;
-				}
-			}
+	private int usedValues(int space) {
+		// Collect the values of the peers, i.e., the other spaces in the row,
+		// column and region:
+		int used = 0;
+		for (int p = space * PEER_COUNT, end = p + PEER_COUNT; p < end; p++) {
+			int peer = PEERS[p];
+			used |= 1 << puzzle[ROW[peer]][COLUMN[peer]];
 		}
-		// No duplicates found in row, column or region:
-		return true;
+		return used & ~1; // empty peers don't use anything
 	}
 
 	/**
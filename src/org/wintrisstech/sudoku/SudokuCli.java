@@ -0,0 +1,405 @@
+package org.wintrisstech.sudoku;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * The command line solver. It reads puzzles in line format (see
+ * {@link Puzzles#parse(CharSequence)}) from files, or from standard input, and
+ * writes one line per puzzle to standard output: the solution in line format,
+ * "unsolvable", or "error" and a message if the line is not a puzzle. Blank
+ * lines and lines starting with '#' are skipped.
+ *
+ * <pre>
+ * java org.wintrisstech.sudoku.SudokuCli [options] [file ...]
+ *   --engine NAME  portfolio (default), solver, inference or sat
+ *   --store DIR    look up and record solutions in a SolutionStore
+ *   --daemon       serve puzzles on a localhost port instead
+ *   --client       send the puzzles to a daemon and print its answers
+ *   --stop         stop the daemon
+ *   --port N       the port of the daemon, default 9181
+ *   --train        solve some puzzles with every engine, and exit
+ * </pre>
+ *
+ * Most of the time of a short run goes to starting the JVM and loading
+ * classes, so there are two ways to make it faster:
+ * <ul>
+ * <li>Class-data sharing. A training run records the classes it loads in an
+ * archive, which later runs map instead of loading the classes again. Only
+ * classes from jar files are archived, so pack the classes first:
+ *
+ * <pre>
+ * jar cf sudoku.jar -C bin org
+ * java -XX:ArchiveClassesAtExit=sudoku.jsa -cp sudoku.jar org.wintrisstech.sudoku.SudokuCli --train
+ * java -XX:SharedArchiveFile=sudoku.jsa -cp sudoku.jar org.wintrisstech.sudoku.SudokuCli puzzles.txt
+ * </pre>
+ *
+ * The script sudoku.sh does this, and makes the jar and the archive again when
+ * the classes change. An archive only works with the JVM and the jar that made
+ * it, so neither is checked in.</li>
+ * <li>A daemon. <code>--daemon</code> keeps a JVM with warm engines running,
+ * and answers each line it gets on the port with a line. Any line client
+ * works, e.g. <code>nc -N localhost 9181 &lt; puzzles.txt</code>, which
+ * answers in a few milliseconds. <code>--client</code> does the same from
+ * Java, but then each call starts a JVM again.</li>
+ * </ul>
+ *
+ * @author Erik
+ */
+public final class SudokuCli {
+
+	/**
+	 * The default port of the daemon.
+	 */
+	static final int DEFAULT_PORT = 9181;
+
+	// The line a client sends to stop the daemon.
+	private static final String STOP = "!stop";
+
+	private final String engineName;
+	private final SolutionStore store;
+	// One engine per thread, as in PuzzleStreams.
+	private final ThreadLocal<SudokuEngine> engines;
+
+	/**
+	 * Creates a solver.
+	 *
+	 * @param engineName
+	 *            the name of the engine, see newEngine()
+	 * @param store
+	 *            the store to look up and record solutions in, or null
+	 * @throws IllegalArgumentException
+	 *             if there is no engine with the name
+	 */
+	SudokuCli(String engineName, SolutionStore store)
+			throws IllegalArgumentException {
+		newEngine(engineName);
+		this.engineName = engineName;
+		this.store = store;
+		engines = ThreadLocal.withInitial(() -> newEngine(this.engineName));
+	}
+
+	/**
+	 * Creates an engine.
+	 *
+	 * @param name
+	 *            portfolio, solver, inference or sat
+	 * @return the engine
+	 * @throws IllegalArgumentException
+	 *             if there is no engine with the name
+	 */
+	static SudokuEngine newEngine(String name) throws IllegalArgumentException {
+		switch (name) {
+		case "portfolio":
+			return new PortfolioSolver();
+		case "solver":
+			return new Solver();
+		case "inference":
+			return new InferenceSolver(InferenceSolver.Level.LOCKED_CANDIDATES);
+		case "sat":
+			return new SatSolver();
+		default:
+			throw new IllegalArgumentException("Unknown engine: " + name);
+		}
+	}
+
+	/**
+	 * Answers a line of input.
+	 *
+	 * @param line
+	 *            a puzzle in line format
+	 * @return the answer, or null if the line is blank or a comment
+	 * @throws IOException
+	 *             if the solution store fails
+	 */
+	String answer(String line) throws IOException {
+		if (line.isBlank() || line.charAt(0) == '#') {
+			return null;
+		}
+		int[][] puzzle;
+		try {
+			puzzle = Puzzles.parse(line);
+		} catch (IllegalArgumentException ex) {
+			return "error " + ex.getMessage();
+		}
+		if (store != null) {
+			int[][] solution = store.get(puzzle);
+			if (solution != null) {
+				return Puzzles.format(solution);
+			}
+		}
+		int[][] original = store == null ? null : Puzzles.copy(puzzle);
+		if (!engines.get().solve(puzzle)) {
+			return "unsolvable";
+		}
+		if (store != null) {
+			store.put(original, puzzle);
+		}
+		return Puzzles.format(puzzle);
+	}
+
+	/**
+	 * Answers each line of the input with a line of output.
+	 *
+	 * @param in
+	 *            the input
+	 * @param out
+	 *            the output
+	 * @param interactive
+	 *            if true, the output is flushed whenever no more input is
+	 *            ready, so that a client waiting for an answer gets it
+	 * @return false if the input asked the daemon to stop
+	 * @throws IOException
+	 *             if reading, writing, or the solution store fails
+	 */
+	boolean answerAll(BufferedReader in, Writer out, boolean interactive)
+			throws IOException {
+		String line;
+		while ((line = in.readLine()) != null) {
+			if (interactive && line.equals(STOP)) {
+				out.flush();
+				return false;
+			}
+			String answer = answer(line);
+			if (answer != null) {
+				out.write(answer);
+				out.write('\n');
+			}
+			if (interactive && !in.ready()) {
+				out.flush();
+			}
+		}
+		out.flush();
+		return true;
+	}
+
+	/**
+	 * Serves clients until one of them sends the stop line. Each client is
+	 * served by a thread of a pool, and the threads keep their engines, so the
+	 * engines stay warm from client to client.
+	 *
+	 * @param server
+	 *            the server socket
+	 * @throws IOException
+	 *             if the server socket fails
+	 */
+	void serve(ServerSocket server) throws IOException {
+		ExecutorService pool = Executors.newCachedThreadPool(task -> {
+			Thread thread = new Thread(task, "SudokuCli worker");
+			thread.setDaemon(true);
+			return thread;
+		});
+		try {
+			serve(server, pool);
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private void serve(ServerSocket server, ExecutorService pool)
+			throws IOException {
+		while (!server.isClosed()) {
+			Socket socket;
+			try {
+				socket = server.accept();
+			} catch (SocketException ex) {
+				if (server.isClosed()) { // stopped by a client
+					break;
+				}
+				throw ex;
+			}
+			pool.execute(() -> serve(server, socket));
+		}
+	}
+
+	/**
+	 * Serves one client.
+	 */
+	private void serve(ServerSocket server, Socket socket) {
+		try (Socket s = socket) {
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					s.getInputStream(), StandardCharsets.US_ASCII));
+			Writer out = new BufferedWriter(new OutputStreamWriter(
+					s.getOutputStream(), StandardCharsets.US_ASCII));
+			if (!answerAll(in, out, true)) {
+				server.close();
+			}
+		} catch (IOException ex) {
+			System.err.println("SudokuCli: " + ex);
+		}
+	}
+
+	/**
+	 * Sends input to a daemon and copies its answers to the output.
+	 *
+	 * @param port
+	 *            the port of the daemon
+	 * @param in
+	 *            the input
+	 * @param out
+	 *            the output
+	 * @throws IOException
+	 *             if the daemon can't be reached, or reading or writing fails
+	 */
+	static void client(int port, Reader in, Writer out) throws IOException {
+		try (Socket socket = new Socket(InetAddress.getLoopbackAddress(), port)) {
+			socket.setTcpNoDelay(true);
+			Writer toDaemon = new OutputStreamWriter(socket.getOutputStream(),
+					StandardCharsets.US_ASCII);
+			// Send from another thread, so the daemon never blocks on answers
+			// that nobody reads.
+			Thread sender = new Thread(() -> {
+				try {
+					in.transferTo(toDaemon);
+					toDaemon.flush();
+					socket.shutdownOutput();
+				} catch (IOException ex) {
+					// The daemon hung up, e.g. when told to stop. Its answers
+					// so far are all there is.
+				}
+			}, "SudokuCli sender");
+			sender.setDaemon(true);
+			sender.start();
+			new InputStreamReader(socket.getInputStream(),
+					StandardCharsets.US_ASCII).transferTo(out);
+			out.flush();
+		}
+	}
+
+	/**
+	 * Solves a few puzzles with every engine, both directly and through a
+	 * daemon, so that a run with -XX:ArchiveClassesAtExit records all the
+	 * classes that a real run loads.
+	 *
+	 * @throws IOException
+	 *             if the daemon fails
+	 */
+	static void train() throws IOException {
+		StringBuilder input = new StringBuilder();
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			input.append(Puzzles.format(Puzzles.ALL_PUZZLES[i])).append('\n');
+		}
+		input.append(Puzzles.format(Puzzles.PUZZLE_4)).append("\n#\nx\n");
+		for (String engine : new String[] { "portfolio", "solver", "inference", "sat" }) {
+			new SudokuCli(engine, null).answerAll(new BufferedReader(
+					new StringReader(input.toString())), new StringWriter(), false);
+		}
+		SudokuCli cli = new SudokuCli("portfolio", null);
+		try (ServerSocket server = new ServerSocket(0, 50,
+				InetAddress.getLoopbackAddress())) {
+			Thread daemon = new Thread(() -> {
+				try {
+					cli.serve(server);
+				} catch (IOException ex) {
+					throw new UncheckedIOException(ex);
+				}
+			});
+			daemon.start();
+			client(server.getLocalPort(), new StringReader(input + STOP + "\n"),
+					new StringWriter());
+			try {
+				daemon.join();
+			} catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	public static void main(String[] args) throws IOException {
+		String engine = "portfolio";
+		String storeDirectory = null;
+		String mode = null;
+		int port = DEFAULT_PORT;
+		List<String> files = new ArrayList<String>();
+		try {
+			for (int i = 0; i < args.length; i++) {
+				switch (args[i]) {
+				case "--engine":
+					engine = args[++i];
+					break;
+				case "--store":
+					storeDirectory = args[++i];
+					break;
+				case "--port":
+					port = Integer.parseInt(args[++i]);
+					break;
+				case "--daemon":
+				case "--client":
+				case "--stop":
+				case "--train":
+					mode = args[i];
+					break;
+				default:
+					if (args[i].startsWith("--")) {
+						throw new IllegalArgumentException("Unknown option: " + args[i]);
+					}
+					files.add(args[i]);
+				}
+			}
+			newEngine(engine);
+		} catch (ArrayIndexOutOfBoundsException | IllegalArgumentException ex) {
+			System.err.println(ex instanceof ArrayIndexOutOfBoundsException
+					? "Missing value of " + args[args.length - 1] : ex.getMessage());
+			System.err.println("Usage: java " + SudokuCli.class.getName()
+					+ " [--engine portfolio|solver|inference|sat] [--store DIR]"
+					+ " [--daemon|--client|--stop|--train] [--port N] [file ...]");
+			System.exit(2);
+			return;
+		}
+		Writer out = new BufferedWriter(new OutputStreamWriter(System.out,
+				StandardCharsets.US_ASCII), 1 << 16);
+		if ("--train".equals(mode)) {
+			train();
+		} else if ("--stop".equals(mode)) {
+			client(port, new StringReader(STOP + "\n"), out);
+		} else if ("--client".equals(mode)) {
+			if (files.isEmpty()) {
+				client(port, new InputStreamReader(System.in, StandardCharsets.US_ASCII), out);
+			}
+			for (String file : files) {
+				client(port, Files.newBufferedReader(Paths.get(file),
+						StandardCharsets.US_ASCII), out);
+			}
+		} else {
+			try (SolutionStore store = storeDirectory == null ? null
+					: SolutionStore.open(Paths.get(storeDirectory))) {
+				SudokuCli cli = new SudokuCli(engine, store);
+				if ("--daemon".equals(mode)) {
+					try (ServerSocket server = new ServerSocket(port, 50,
+							InetAddress.getLoopbackAddress())) {
+						cli.serve(server);
+					}
+				} else if (files.isEmpty()) {
+					cli.answerAll(new BufferedReader(new InputStreamReader(
+							System.in, StandardCharsets.US_ASCII)), out, false);
+				} else {
+					for (String file : files) {
+						try (BufferedReader in = Files.newBufferedReader(
+								Paths.get(file), StandardCharsets.US_ASCII)) {
+							cli.answerAll(in, out, false);
+						}
+					}
+				}
+			}
+		}
+	}
+}
@@ -0,0 +1,32 @@
+package org.wintrisstech.sudoku;
+
+/**
+ * The contract shared by the Sudoku solving engines, so that callers such as
+ * {@link PortfolioSolver} can use them interchangeably.
+ *
+ * @author Erik
+ */
+interface SudokuEngine {
+
+	/**
+	 * Solves a puzzle.
+	 * <p>
+	 * Post-condition: If there is a solution, the puzzle argument is filled
+	 * with it. Otherwise, the puzzle argument is unchanged.
+	 *
+	 * @param puzzle
+	 *            the puzzle to solve. A 0 represents an empty space.
+	 * @return true if, and only if, the puzzle has a solution (and the engine
+	 *         found it).
+	 */
+	boolean solve(int[][] puzzle);
+
+	/**
+	 * Gets the number of nodes of the search of the last call to solve(). What
+	 * counts as a node depends on the engine, but for a given engine and
+	 * puzzle it measures the work done.
+	 *
+	 * @return the number of nodes
+	 */
+	long getNodes();
+}
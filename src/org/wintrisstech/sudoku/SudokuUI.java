@@ -1,5 +1,7 @@
 package org.wintrisstech.sudoku;
 
+import java.io.IOException;
+
 /**
  * This is the main (and only) class of an application that finds solutions
  * to Sudoku puzzles.
@@ -14,7 +16,15 @@ public class SudokuUI {
      */
     private int[][] puzzle;
 
-    public static void main(String[] args) {
+    /**
+     * Solves the puzzles in the Puzzles class. With arguments, runs the
+     * command line solver instead, see {@link SudokuCli}.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length > 0) {
+            SudokuCli.main(args);
+            return;
+        }
         new SudokuUI().run();
     }
 
@@ -0,0 +1,225 @@
+package org.wintrisstech.sudoku;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+/**
+ * Reads a file written by {@link SearchTrace}, rebuilds the search trees and
+ * prints statistics for each depth of them, and the seed of the slowest
+ * search, which reproduces it alone.
+ * <p>
+ * Usage: <code>java org.wintrisstech.sudoku.TraceReplay trace-file</code>
+ *
+ * @author Erik
+ */
+class TraceReplay {
+
+	// The deepest a search can go, one decision per space.
+	private static final int MAX_DEPTH = 9 * 9;
+
+	private int searches;
+	private long events;
+	// Per search: the seed and the decisions (nodes).
+	private long[] seeds = new long[16];
+	private long[] searchNodes = new long[16];
+	// Per depth: the decisions (nodes) at that depth, the ones that failed,
+	// and the spaces filled by propagation below them.
+	private final long[] nodes = new long[MAX_DEPTH + 1];
+	private final long[] failures = new long[MAX_DEPTH + 1];
+	private final long[] propagations = new long[MAX_DEPTH + 1];
+	// Per depth: the nodes that have children, and the most children of a
+	// node.
+	private final long[] parents = new long[MAX_DEPTH + 1];
+	private final long[] maxChildren = new long[MAX_DEPTH + 1];
+	// The number of children of each node on the current path, the root of
+	// the search at depth 0.
+	private final long[] children = new long[MAX_DEPTH + 1];
+	private int pathDepth;
+
+	/**
+	 * Replays a trace file.
+	 *
+	 * @param file
+	 *            the trace file
+	 * @throws IOException
+	 *             if the file can't be read or is not a trace
+	 */
+	void replay(Path file) throws IOException {
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+				Files.newInputStream(file), 1 << 16))) {
+			if (in.readInt() != SearchTrace.MAGIC) {
+				throw new IOException("Not a search trace: " + file);
+			}
+			while (true) {
+				long event;
+				try {
+					event = in.readLong();
+				} catch (EOFException e) {
+					break;
+				}
+				replay(event);
+				if (SearchTrace.type(event) == SearchTrace.START) {
+					try {
+						seeds[searches - 1] = in.readLong();
+					} catch (EOFException e) {
+						throw new IOException("Missing seed of search " + searches);
+					}
+				}
+			}
+			finishSearch();
+		}
+	}
+
+	/**
+	 * Adds an event to the search tree.
+	 */
+	private void replay(long event) {
+		events++;
+		int depth = SearchTrace.depth(event);
+		if (depth > MAX_DEPTH) {
+			throw new IllegalStateException("Bad depth in event " + events);
+		}
+		switch (SearchTrace.type(event)) {
+		case SearchTrace.START:
+			finishSearch();
+			if (searches == seeds.length) {
+				seeds = Arrays.copyOf(seeds, 2 * searches);
+				searchNodes = Arrays.copyOf(searchNodes, 2 * searches);
+			}
+			searches++;
+			break;
+		case SearchTrace.DECISION:
+			// A new child of the node at depth - 1. Any deeper nodes of the
+			// path are done; a search that gave up leaves them open.
+			closePath(depth - 1);
+			if (searches == 0) {
+				throw new IllegalStateException("No search started before event " + events);
+			}
+			nodes[depth]++;
+			searchNodes[searches - 1]++;
+			children[depth - 1]++;
+			children[depth] = 0;
+			pathDepth = depth;
+			break;
+		case SearchTrace.PROPAGATION:
+			propagations[depth]++;
+			break;
+		case SearchTrace.BACKTRACK:
+			failures[depth]++;
+			closePath(depth - 1);
+			break;
+		default:
+			throw new IllegalStateException("Bad event type in event " + events);
+		}
+	}
+
+	/**
+	 * Finishes the tree of the current search, if any.
+	 */
+	private void finishSearch() {
+		closePath(0);
+		if (searches > 0) {
+			finish(0);
+			children[0] = 0;
+		}
+	}
+
+	/**
+	 * Finishes the nodes of the current path that are deeper than a depth.
+	 */
+	private void closePath(int depth) {
+		for (; pathDepth > depth; pathDepth--) {
+			finish(pathDepth);
+		}
+	}
+
+	/**
+	 * Counts the children of a finished node.
+	 */
+	private void finish(int depth) {
+		if (children[depth] > 0) {
+			parents[depth]++;
+			maxChildren[depth] = Math.max(maxChildren[depth], children[depth]);
+		}
+	}
+
+	/**
+	 * Prints the statistics of the replayed searches.
+	 *
+	 * @param out
+	 *            the stream to print to
+	 */
+	void print(PrintStream out) {
+		out.println("Searches = " + searches + ", events = " + events);
+		if (searches > 0) {
+			int slowest = 0;
+			for (int i = 1; i < searches; i++) {
+				if (searchNodes[i] > searchNodes[slowest]) {
+					slowest = i;
+				}
+			}
+			out.println("Slowest search = " + (slowest + 1) + ", nodes = "
+					+ searchNodes[slowest] + ", seed = " + seeds[slowest]);
+		}
+		out.println(" depth      nodes   failed  branching  max  propagations/node");
+		int deepest = MAX_DEPTH;
+		while (deepest > 0 && nodes[deepest] == 0 && propagations[deepest] == 0) {
+			deepest--;
+		}
+		for (int d = 0; d <= deepest; d++) {
+			// The root of each search is the node at depth 0.
+			long n = d == 0 ? searches : nodes[d];
+			long expanded = d < MAX_DEPTH ? nodes[d + 1] : 0;
+			out.printf("%6d %10d %8d %10.2f %4d %18.2f%n", d, n, failures[d],
+					parents[d] == 0 ? 0.0 : (double) expanded / parents[d],
+					maxChildren[d], n == 0 ? 0.0 : (double) propagations[d] / n);
+		}
+	}
+
+	/**
+	 * Gets the number of decisions at each depth. Entry 0 is the number of
+	 * searches.
+	 *
+	 * @return the nodes per depth
+	 */
+	long[] getNodes() {
+		long[] result = Arrays.copyOf(nodes, nodes.length);
+		result[0] = searches;
+		return result;
+	}
+
+	/**
+	 * Gets the seed of each search.
+	 *
+	 * @return the seeds, in the order of the searches
+	 */
+	long[] getSeeds() {
+		return Arrays.copyOf(seeds, searches);
+	}
+
+	/**
+	 * Gets the number of decisions of each search.
+	 *
+	 * @return the nodes, in the order of the searches
+	 */
+	long[] getSearchNodes() {
+		return Arrays.copyOf(searchNodes, searches);
+	}
+
+	public static void main(String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("Usage: java " + TraceReplay.class.getName() + " trace-file");
+			System.exit(2);
+		}
+		TraceReplay replay = new TraceReplay();
+		replay.replay(Paths.get(args[0]));
+		replay.print(System.out);
+	}
+}
@@ -0,0 +1,45 @@
+#!/bin/sh
+# Runs the command line solver, org.wintrisstech.sudoku.SudokuCli, from the
+# classes that Eclipse builds in bin. The classes are packed into
+# bin/sudoku.jar, because class-data sharing only archives classes from jar
+# files. The first run, and the first after the classes change, makes a
+# class-data sharing archive from a training run, so that later runs start
+# faster.
+dir=$(cd "$(dirname "$0")" && pwd)
+classes="$dir/bin"
+jar="$classes/sudoku.jar"
+archive="$classes/sudoku.jsa"
+# Marks a training run that failed, so that it is not tried again on every
+# run. It is tried again when the classes change, or when this file is
+# removed.
+failed="$classes/sudoku.jsa.failed"
+main=org.wintrisstech.sudoku.SudokuCli
+
+# The temporary files are renamed into place, so that a run never sees a
+# partly written jar or archive, even if several runs start at once.
+if [ ! -f "$jar" ] || [ -n "$(find "$classes/org" -name '*.class' -newer "$jar" | head -n 1)" ]; then
+	if ! jar cf "$jar.$$" -C "$classes" org; then
+		rm -f "$jar.$$"
+		echo "sudoku.sh: can't pack the classes in $classes" >&2
+		exit 1
+	fi
+	mv -f "$jar.$$" "$jar"
+fi
+if { [ ! -f "$archive" ] || [ "$jar" -nt "$archive" ]; } \
+		&& { [ ! -f "$failed" ] || [ "$jar" -nt "$failed" ]; }; then
+	if java -XX:ArchiveClassesAtExit="$archive.$$" -cp "$jar" $main --train >/dev/null \
+			&& [ -s "$archive.$$" ]; then
+		mv -f "$archive.$$" "$archive"
+		rm -f "$failed"
+	else
+		rm -f "$archive.$$"
+		touch "$failed"
+		echo "sudoku.sh: the training run failed, so this runs without class-data sharing." >&2
+		echo "sudoku.sh: remove $failed to try again." >&2
+	fi
+fi
+if [ -f "$archive" ] && [ ! "$jar" -nt "$archive" ]; then
+	exec java -XX:SharedArchiveFile="$archive" -XX:TieredStopAtLevel=1 \
+		-cp "$jar" $main "$@"
+fi
+exec java -XX:TieredStopAtLevel=1 -cp "$jar" $main "$@"
@@ -0,0 +1,196 @@
+package org.wintrisstech.sudoku;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class BatchPropagatorTest extends TestCase {
+
+	// Singles alone solve puzzles 2 and 3, but only fill some of the spaces of
+	// this grid with 17 clues.
+	private static final String SEVENTEEN = "000000012008030000000000040120500000000004700060000000507000300000620000000100000";
+	// A grid without a solution, which singles don't refute.
+	private static final String UNSOLVABLE = "23...5...45......9.9..........9..82..6.3......295...64...4.8.7...4.1.9..3..79....";
+
+	public void testSinglesSolveAnEasyPuzzle() throws Exception {
+		BatchPropagator batch = new BatchPropagator(4);
+		batch.load(0, Puzzles.getPuzzle(2));
+		for (int i = 1; i < batch.getLanes(); i++) {
+			batch.clear(i);
+		}
+		batch.propagate();
+		assertTrue(batch.isSolved(0));
+		assertFalse(batch.isContradiction(0));
+		int[][] puzzle = Puzzles.getPuzzle(2);
+		batch.store(0, puzzle);
+		SolverTest.assertEquals(PuzzleSolutions.getSolution(2), puzzle);
+	}
+
+	public void testADuplicateClueIsAContradiction() throws Exception {
+		BatchPropagator batch = new BatchPropagator(2);
+		batch.load(0, duplicateClue());
+		batch.load(1, Puzzles.getPuzzle(2));
+		batch.propagate();
+		assertTrue(batch.isContradiction(0));
+		assertFalse(batch.isSolved(0));
+		// The other lane is not affected.
+		assertTrue(batch.isSolved(1));
+		// Loading a lane forgets its contradiction.
+		batch.load(0, Puzzles.getPuzzle(2));
+		batch.propagate();
+		assertFalse(batch.isContradiction(0));
+		assertTrue(batch.isSolved(0));
+	}
+
+	public void testClearedLanesAreNeitherSolvedNorDead() throws Exception {
+		BatchPropagator batch = new BatchPropagator(3);
+		batch.load(0, duplicateClue());
+		batch.propagate();
+		assertTrue(batch.isContradiction(0));
+		for (int i = 0; i < batch.getLanes(); i++) {
+			batch.clear(i);
+		}
+		batch.propagate();
+		for (int i = 0; i < batch.getLanes(); i++) {
+			assertFalse(batch.isContradiction(i));
+			assertFalse(batch.isSolved(i));
+		}
+	}
+
+	public void testSolveAll() throws Exception {
+		// Five puzzles in batches of 4, so the second batch is not full.
+		int[][][] puzzles = { Puzzles.getPuzzle(2), duplicateClue(),
+				Puzzles.parse(SEVENTEEN), Puzzles.getPuzzle(3),
+				Puzzles.parse(SEVENTEEN) };
+		int clues = clues(puzzles[2]);
+		List<int[][]> handedOff = new ArrayList<int[][]>();
+		boolean[] solved = BatchPropagator.solveAll(puzzles, 4,
+				recording(new SatSolver(), handedOff));
+
+		assertTrue(solved[0]);
+		SolverTest.assertEquals(PuzzleSolutions.getSolution(2), puzzles[0]);
+		assertFalse(solved[1]);
+		SolverTest.assertEquals(duplicateClue(), puzzles[1]);
+		assertTrue(solved[3]);
+		SolverTest.assertEquals(PuzzleSolutions.getSolution(3), puzzles[3]);
+		// Only the grids with 17 clues go to the engine, with the spaces that
+		// propagation filled.
+		assertEquals(2, handedOff.size());
+		for (int[][] grid : handedOff) {
+			assertTrue(clues(grid) > clues);
+			assertKeepsClues(Puzzles.parse(SEVENTEEN), grid);
+		}
+		assertTrue(solved[2]);
+		assertTrue(solved[4]);
+		assertTrue(PackedGrid.of(puzzles[2]).isSolved());
+		SolverTest.assertEquals(puzzles[2], puzzles[4]);
+	}
+
+	public void testSolveAllLeavesPuzzlesWithoutASolutionUnchanged() throws Exception {
+		BatchPropagator batch = new BatchPropagator(1);
+		batch.load(0, Puzzles.parse(UNSOLVABLE));
+		batch.propagate();
+		assertFalse(batch.isContradiction(0));
+		assertFalse(batch.isSolved(0));
+
+		int[][][] puzzles = { Puzzles.parse(UNSOLVABLE) };
+		List<int[][]> handedOff = new ArrayList<int[][]>();
+		boolean[] solved = BatchPropagator.solveAll(puzzles, 4,
+				recording(new SatSolver(), handedOff));
+		assertFalse(solved[0]);
+		assertEquals(1, handedOff.size());
+		SolverTest.assertEquals(Puzzles.parse(UNSOLVABLE), puzzles[0]);
+	}
+
+	public void testSolveAllLeavesPuzzlesUnchangedWhenTheEngineGivesUp() throws Exception {
+		InferenceSolver engine = new InferenceSolver();
+		engine.setNodeBudget(1);
+		int[][][] puzzles = { Puzzles.parse(SEVENTEEN), Puzzles.getPuzzle(2) };
+		boolean[] solved = BatchPropagator.solveAll(puzzles, 2, engine);
+		assertFalse(solved[0]);
+		assertTrue(engine.isBudgetExhausted());
+		SolverTest.assertEquals(Puzzles.parse(SEVENTEEN), puzzles[0]);
+		assertTrue(solved[1]);
+	}
+
+	public void testOutOfRangeValuesAreAContradiction() throws Exception {
+		BatchPropagator batch = new BatchPropagator(3);
+		for (int i = 0; i < 3; i++) {
+			batch.load(i, Puzzles.getPuzzle(2));
+		}
+		int[][] puzzle = Puzzles.getPuzzle(2);
+		puzzle[4][4] = 10;
+		batch.load(0, puzzle);
+		puzzle[4][4] = -1;
+		batch.load(1, puzzle);
+		batch.propagate();
+		assertTrue(batch.isContradiction(0));
+		assertTrue(batch.isContradiction(1));
+		assertFalse(batch.isContradiction(2));
+		assertTrue(batch.isSolved(2));
+
+		int[][][] puzzles = { Puzzles.copy(puzzle) };
+		assertFalse(BatchPropagator.solveAll(puzzles, 1, new SatSolver())[0]);
+		SolverTest.assertEquals(puzzle, puzzles[0]);
+	}
+
+	/**
+	 * Wraps an engine to record a copy of each grid it is handed.
+	 */
+	private static SudokuEngine recording(final SudokuEngine engine,
+			final List<int[][]> handedOff) {
+		return new SudokuEngine() {
+			public boolean solve(int[][] puzzle) {
+				handedOff.add(Puzzles.copy(puzzle));
+				return engine.solve(puzzle);
+			}
+
+			public long getNodes() {
+				return engine.getNodes();
+			}
+		};
+	}
+
+	/**
+	 * Asserts that a grid keeps every clue of a puzzle.
+	 */
+	private static void assertKeepsClues(int[][] puzzle, int[][] grid) {
+		for (int row = 0; row < 9; row++) {
+			for (int column = 0; column < 9; column++) {
+				if (puzzle[row][column] != 0) {
+					assertEquals(puzzle[row][column], grid[row][column]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Gets an easy puzzle with a clue copied to an empty space of its row.
+	 */
+	private static int[][] duplicateClue() {
+		int[][] puzzle = Puzzles.getPuzzle(2);
+		int clue = 0, empty = 0;
+		for (int column = 0; column < 9; column++) {
+			if (puzzle[0][column] != 0) {
+				clue = puzzle[0][column];
+			} else {
+				empty = column;
+			}
+		}
+		puzzle[0][empty] = clue;
+		return puzzle;
+	}
+
+	private static int clues(int[][] puzzle) {
+		int clues = 0;
+		for (int[] row : puzzle) {
+			for (int value : row) {
+				if (value != 0) {
+					clues++;
+				}
+			}
+		}
+		return clues;
+	}
+}
@@ -0,0 +1,84 @@
+package org.wintrisstech.sudoku;
+
+import junit.framework.TestCase;
+
+public class GeometryTest extends TestCase {
+
+	public void testStandardGeometry() throws Exception {
+		assertSame(Geometry.STANDARD, Geometry.of(3));
+		assertEquals(9, Geometry.STANDARD.size);
+		assertEquals(81, Geometry.STANDARD.cells);
+		assertEquals(20, Geometry.STANDARD.peerCount);
+		assertEquals(4 * 9 + 5, Geometry.STANDARD.cell(4, 5));
+	}
+
+	public void testIllegalBoxSizes() throws Exception {
+		for (int boxSize : new int[] { -1, 0, 12 }) {
+			try {
+				Geometry.of(boxSize);
+				fail("Box size " + boxSize);
+			} catch (IllegalArgumentException e) {
+				// expected
+			}
+		}
+	}
+
+	public void testPeers() throws Exception {
+		for (int boxSize = 1; boxSize <= 5; boxSize++) {
+			Geometry geometry = Geometry.of(boxSize);
+			int size = boxSize * boxSize;
+			assertEquals(3 * (size - 1) - 2 * (boxSize - 1), geometry.peerCount);
+			for (int s = 0; s < geometry.cells; s++) {
+				boolean[] isPeer = new boolean[geometry.cells];
+				for (int k = s * geometry.peerCount; k < (s + 1) * geometry.peerCount; k++) {
+					int peer = geometry.peers[k];
+					String name = "Box size " + boxSize + ", space " + s + ", peer " + peer;
+					assertTrue(name, peer != s);
+					assertFalse(name + " is listed twice", isPeer[peer]);
+					assertTrue(name, sharesUnit(geometry, s, peer));
+					isPeer[peer] = true;
+				}
+				// Every space that shares a unit is a peer.
+				for (int t = 0; t < geometry.cells; t++) {
+					assertEquals("Box size " + boxSize + ", spaces " + s + " and " + t,
+							t != s && sharesUnit(geometry, s, t), isPeer[t]);
+				}
+			}
+		}
+	}
+
+	public void testUnits() throws Exception {
+		for (int boxSize = 1; boxSize <= 5; boxSize++) {
+			Geometry geometry = Geometry.of(boxSize);
+			int size = geometry.size;
+			assertEquals(3 * size * size, geometry.units.length);
+			for (int s = 0; s < geometry.cells; s++) {
+				int row = s / size, column = s % size;
+				assertEquals(row, geometry.row[s]);
+				assertEquals(column, geometry.column[s]);
+				assertEquals(row / boxSize * boxSize + column / boxSize, geometry.box[s]);
+				assertEquals(s, geometry.cell(row, column));
+			}
+			for (int u = 0; u < 3 * size; u++) {
+				String name = "Box size " + boxSize + ", unit " + u;
+				int previous = -1;
+				for (int k = u * size; k < (u + 1) * size; k++) {
+					int s = geometry.units[k];
+					// Increasing order, so also distinct.
+					assertTrue(name, s > previous);
+					previous = s;
+					int unit = u < size ? geometry.row[s]
+							: u < 2 * size ? size + geometry.column[s]
+									: 2 * size + geometry.box[s];
+					assertEquals(name + ", space " + s, u, unit);
+				}
+			}
+		}
+	}
+
+	private static boolean sharesUnit(Geometry geometry, int s, int t) {
+		return geometry.row[s] == geometry.row[t]
+				|| geometry.column[s] == geometry.column[t]
+				|| geometry.box[s] == geometry.box[t];
+	}
+}
@@ -0,0 +1,59 @@
+package org.wintrisstech.sudoku;
+
+import junit.framework.TestCase;
+
+public class InferenceSolverTest extends TestCase {
+
+	// A grid that needs search at every level.
+	private static final String HARD = "8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..";
+
+	public void testSolvingAllPuzzles() throws Exception {
+		for (InferenceSolver.Level level : InferenceSolver.Level.values()) {
+			InferenceSolver solver = new InferenceSolver(level);
+			for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+				int[][] puzzle = Puzzles.getPuzzle(i);
+				assertTrue(level + ", puzzle " + i, solver.solve(puzzle));
+				assertFalse(solver.isBudgetExhausted());
+				SolverTest.assertEquals(PuzzleSolutions.getSolution(i), puzzle);
+			}
+		}
+	}
+
+	public void testProvingThatAPuzzleHasNoSolution() throws Exception {
+		for (InferenceSolver.Level level : InferenceSolver.Level.values()) {
+			InferenceSolver solver = new InferenceSolver(level);
+			int[][] puzzle = Puzzles.copy(Puzzles.PUZZLE_4);
+			assertFalse(level.toString(), solver.solve(puzzle));
+			assertFalse(solver.isBudgetExhausted());
+			SolverTest.assertEquals(Puzzles.PUZZLE_4, puzzle);
+		}
+	}
+
+	public void testRejectingOutOfRangeClues() throws Exception {
+		InferenceSolver solver = new InferenceSolver();
+		for (int value : new int[] { -1, 10 }) {
+			int[][] puzzle = Puzzles.getPuzzle(1);
+			puzzle[4][4] = value;
+			int[][] original = Puzzles.copy(puzzle);
+			assertFalse(solver.solve(puzzle));
+			SolverTest.assertEquals(original, puzzle);
+		}
+	}
+
+	public void testExhaustingTheNodeBudget() throws Exception {
+		for (InferenceSolver.Level level : InferenceSolver.Level.values()) {
+			InferenceSolver solver = new InferenceSolver(level);
+			solver.setNodeBudget(1);
+			int[][] puzzle = Puzzles.parse(HARD);
+			assertFalse(level.toString(), solver.solve(puzzle));
+			assertTrue(level.toString(), solver.isBudgetExhausted());
+			SolverTest.assertEquals(Puzzles.parse(HARD), puzzle);
+
+			// Without a budget, the same solver solves it.
+			solver.setNodeBudget(Long.MAX_VALUE);
+			assertTrue(level.toString(), solver.solve(puzzle));
+			assertFalse(solver.isBudgetExhausted());
+			assertTrue(PackedGrid.of(puzzle).isSolved());
+		}
+	}
+}
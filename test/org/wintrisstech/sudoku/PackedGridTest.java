@@ -0,0 +1,91 @@
+package org.wintrisstech.sudoku;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class PackedGridTest extends TestCase {
+
+	public void testSolvedGridsFitInTwoLongs() throws Exception {
+		for (int i = 0; i < PuzzleSolutions.ALL_SOLUTIONS.length; i++) {
+			int[][] solution = PuzzleSolutions.getSolution(i);
+			PackedGrid packed = PackedGrid.of(solution);
+			assertTrue(packed.isSolved());
+			assertEquals(16, packed.byteSize());
+			SolverTest.assertEquals(solution, packed.toGrid());
+		}
+	}
+
+	public void testPuzzlesRoundTrip() throws Exception {
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			int[][] puzzle = Puzzles.getPuzzle(i);
+			PackedGrid packed = PackedGrid.of(puzzle);
+			assertFalse(packed.isSolved());
+			SolverTest.assertEquals(puzzle, packed.toGrid());
+		}
+		PackedGrid empty = PackedGrid.of(new int[9][9]);
+		assertFalse(empty.isSolved());
+		SolverTest.assertEquals(new int[9][9], empty.toGrid());
+	}
+
+	public void testEqualsHashAndOrder() throws Exception {
+		PackedGrid a = PackedGrid.of(Puzzles.getPuzzle(0));
+		PackedGrid b = PackedGrid.of(Puzzles.getPuzzle(0));
+		PackedGrid c = PackedGrid.of(Puzzles.getPuzzle(1));
+		PackedGrid solved = PackedGrid.of(PuzzleSolutions.getSolution(0));
+		assertEquals(a, b);
+		assertEquals(a.hash64(), b.hash64());
+		assertEquals(0, a.compareTo(b));
+		assertFalse(a.equals(c));
+		assertFalse(a.hash64() == c.hash64());
+		assertEquals(-Integer.signum(a.compareTo(c)), Integer.signum(c.compareTo(a)));
+		assertTrue(solved.compareTo(a) < 0);
+	}
+
+	public void testWriteAndRead() throws Exception {
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			PackedGrid.of(Puzzles.getPuzzle(i)).writeTo(buffer);
+			PackedGrid.of(PuzzleSolutions.getSolution(i)).writeTo(buffer);
+		}
+		buffer.flip();
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			assertEquals(PackedGrid.of(Puzzles.getPuzzle(i)), PackedGrid.readFrom(buffer));
+			assertEquals(PackedGrid.of(PuzzleSolutions.getSolution(i)), PackedGrid.readFrom(buffer));
+		}
+		assertFalse(buffer.hasRemaining());
+	}
+
+	public void testFlatArrays() throws Exception {
+		// A full grid that is not solved takes the most longs.
+		int[][] full = PuzzleSolutions.getSolution(0);
+		int swap = full[0][0];
+		full[0][0] = full[0][1];
+		full[0][1] = swap;
+		int n = Puzzles.ALL_PUZZLES.length;
+		int[][][] grids = new int[2 * n + 1][][];
+		for (int i = 0; i < n; i++) {
+			grids[2 * i] = Puzzles.getPuzzle(i);
+			grids[2 * i + 1] = PuzzleSolutions.getSolution(i);
+		}
+		grids[2 * n] = full;
+		long[] words = new long[grids.length * PackedGrid.MAX_WORDS];
+		int[] offsets = new int[grids.length];
+		int offset = 0;
+		for (int i = 0; i < grids.length; i++) {
+			offsets[i] = offset;
+			offset += PackedGrid.encode(grids[i], words, offset);
+			assertEquals(offset - offsets[i], PackedGrid.length(words, offsets[i]));
+		}
+		assertEquals(PackedGrid.MAX_WORDS, PackedGrid.length(words, offsets[2 * n]));
+		for (int i = 0; i < grids.length; i++) {
+			PackedGrid grid = PackedGrid.of(grids[i]);
+			assertEquals(grid.hash64(), PackedGrid.hash64(words, offsets[i]));
+			assertEquals(grid, PackedGrid.of(PackedGrid.decode(words, offsets[i])));
+			for (int j = 0; j < grids.length; j++) {
+				assertEquals(Integer.signum(grid.compareTo(PackedGrid.of(grids[j]))),
+						Integer.signum(PackedGrid.compare(words, offsets[i], words, offsets[j])));
+			}
+		}
+	}
+}
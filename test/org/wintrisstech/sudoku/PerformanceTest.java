@@ -0,0 +1,173 @@
+package org.wintrisstech.sudoku;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * Catches performance regressions of the engines. Each engine solves the
+ * puzzles of a corpus, stratified by hardness, and must stay within a budget
+ * of search nodes and of allocated bytes. Node counts don't depend on the
+ * speed of the machine, so the budgets are tight (about twice what the engines
+ * take now) without making the test flaky. If a change makes an engine
+ * smarter, lower its budgets.
+ */
+public class PerformanceTest extends TestCase {
+
+	// The strata of the corpus, in the files corpus/<stratum>.txt.
+	private static final String EASY = "easy";
+	private static final String SEVENTEEN = "seventeen";
+	private static final String ADVERSARIAL = "adversarial";
+
+	// The seed of Solver, whose search depends on its random order.
+	private static final long SEED = 1;
+
+	// Allocated bytes per puzzle. The backtracking engines only allocate the
+	// exception that ends a Solver search; the SAT engine allocates its
+	// learnt clauses.
+	private static final long SEARCH_BYTES_PER_PUZZLE = 320;
+	private static final long SAT_BYTES_PER_PUZZLE = 2560;
+
+	public void testSolverBudgets() throws Exception {
+		assertBudgets(solver(), EASY, 1200, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(solver(), SEVENTEEN, 650000, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(solver(), ADVERSARIAL, 80000, SEARCH_BYTES_PER_PUZZLE);
+	}
+
+	public void testInferenceSolverBudgets() throws Exception {
+		assertBudgets(new InferenceSolver(), EASY, 10, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(new InferenceSolver(), SEVENTEEN, 400, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(new InferenceSolver(), ADVERSARIAL, 1000, SEARCH_BYTES_PER_PUZZLE);
+		InferenceSolver fish = new InferenceSolver(InferenceSolver.Level.FISH);
+		assertBudgets(fish, SEVENTEEN, 10, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(fish, ADVERSARIAL, 600, SEARCH_BYTES_PER_PUZZLE);
+	}
+
+	public void testPortfolioSolverBudgets() throws Exception {
+		assertBudgets(new PortfolioSolver(), EASY, 10, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(new PortfolioSolver(), SEVENTEEN, 10, SEARCH_BYTES_PER_PUZZLE);
+		assertBudgets(new PortfolioSolver(), ADVERSARIAL, 800, SEARCH_BYTES_PER_PUZZLE);
+	}
+
+	public void testSatSolverBudgets() throws Exception {
+		assertBudgets(new SatSolver(), EASY, 10, SAT_BYTES_PER_PUZZLE);
+		assertBudgets(new SatSolver(), SEVENTEEN, 300, SAT_BYTES_PER_PUZZLE);
+		assertBudgets(new SatSolver(), ADVERSARIAL, 400, SAT_BYTES_PER_PUZZLE);
+	}
+
+	private static Solver solver() {
+		Solver solver = new Solver();
+		solver.setSeed(SEED);
+		return solver;
+	}
+
+	/**
+	 * Solves the puzzles of a stratum twice, and checks the solutions (solved
+	 * grids that keep the clues), the nodes of the second run and, if the JVM can measure it, the bytes
+	 * allocated by the second run. The first run loads and compiles the code,
+	 * which allocates.
+	 */
+	private static void assertBudgets(SudokuEngine engine, String stratum,
+			long nodeBudget, long bytesPerPuzzle) throws IOException {
+		String name = engine.getClass().getSimpleName() + " on " + stratum;
+		List<int[][]> puzzles = load(stratum);
+		solveAll(engine, name, copy(puzzles));
+		if (engine instanceof Solver) {
+			((Solver) engine).setSeed(SEED);
+		}
+		List<int[][]> grids = copy(puzzles);
+		long start = allocatedBytes();
+		// What measuring allocates itself, to subtract.
+		long overhead = allocatedBytes() - start;
+		long bytes = allocatedBytes();
+		long nodes = solveAll(engine, name, grids);
+		bytes = allocatedBytes() - bytes - overhead;
+		for (int i = 0; i < grids.size(); i++) {
+			int[][] puzzle = puzzles.get(i), grid = grids.get(i);
+			assertTrue(name + ", puzzle " + i, PackedGrid.of(grid).isSolved());
+			for (int row = 0; row < 9; row++) {
+				for (int column = 0; column < 9; column++) {
+					if (puzzle[row][column] != 0) {
+						assertEquals(name + ", puzzle " + i + " changed a clue",
+								puzzle[row][column], grid[row][column]);
+					}
+				}
+			}
+		}
+		assertTrue(name + " took " + nodes + " nodes, budget " + nodeBudget,
+				nodes <= nodeBudget);
+		if (start >= 0) {
+			long byteBudget = bytesPerPuzzle * puzzles.size();
+			assertTrue(name + " allocated " + bytes + " bytes, budget " + byteBudget,
+					bytes <= byteBudget);
+		}
+	}
+
+	/**
+	 * Solves puzzles, which must all have a solution.
+	 *
+	 * @return the total nodes
+	 */
+	private static long solveAll(SudokuEngine engine, String name,
+			List<int[][]> puzzles) {
+		long nodes = 0;
+		for (int i = 0; i < puzzles.size(); i++) {
+			// Only build the message on failure, so as not to allocate.
+			if (!engine.solve(puzzles.get(i))) {
+				fail(name + " found no solution to puzzle " + i);
+			}
+			nodes += engine.getNodes();
+		}
+		return nodes;
+	}
+
+	/**
+	 * Gets the number of bytes the current thread has allocated.
+	 *
+	 * @return the number of bytes, or -1 if the JVM can't measure it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return -1;
+		}
+		com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) bean;
+		if (!sunBean.isThreadAllocatedMemorySupported()
+				|| !sunBean.isThreadAllocatedMemoryEnabled()) {
+			return -1;
+		}
+		return sunBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+	}
+
+	private static List<int[][]> load(String stratum) throws IOException {
+		InputStream in = PerformanceTest.class.getResourceAsStream("corpus/"
+				+ stratum + ".txt");
+		assertNotNull("Missing corpus " + stratum, in);
+		List<int[][]> puzzles = new ArrayList<int[][]>();
+		try (BufferedReader reader = new BufferedReader(new InputStreamReader(in,
+				StandardCharsets.US_ASCII))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (!line.isBlank() && line.charAt(0) != '#') {
+					puzzles.add(Puzzles.parse(line));
+				}
+			}
+		}
+		return puzzles;
+	}
+
+	private static List<int[][]> copy(List<int[][]> puzzles) {
+		List<int[][]> copies = new ArrayList<int[][]>();
+		for (int[][] puzzle : puzzles) {
+			copies.add(Puzzles.copy(puzzle));
+		}
+		return copies;
+	}
+}
@@ -0,0 +1,82 @@
+package org.wintrisstech.sudoku;
+
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import junit.framework.TestCase;
+
+public class PuzzleSpliteratorTest extends TestCase {
+
+	// Enough lines to be split many times (MIN_SPLIT_SIZE is 64 KiB).
+	private static final int PUZZLES = 20000;
+
+	private Path file;
+	// The puzzles written to the file, in line format.
+	private List<String> expected = new ArrayList<String>();
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("puzzles", ".txt").toPath();
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i < PUZZLES; i++) {
+			if (i % 100 == 0) {
+				text.append("# comment ").append(i).append('\n');
+			}
+			if (i % 50 == 0) {
+				text.append(i % 100 == 0 ? "\n" : "\r\n");
+			}
+			// Relabel the digits, so that the lines differ.
+			int[][] puzzle = Puzzles.getPuzzle(i % Puzzles.ALL_PUZZLES.length);
+			for (int[] row : puzzle) {
+				for (int j = 0; j < row.length; j++) {
+					row[j] = row[j] == 0 ? 0 : (row[j] + i) % 9 + 1;
+				}
+			}
+			String line = Puzzles.format(puzzle);
+			expected.add(line);
+			text.append(line);
+			if (i < PUZZLES - 1) { // no terminator after the last line
+				text.append(i % 7 == 0 ? "\r\n" : "\n");
+			}
+		}
+		Files.write(file, text.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		Files.delete(file);
+	}
+
+	public void testSequentialStream() throws Exception {
+		try (Stream<int[][]> puzzles = PuzzleStreams.puzzles(file)) {
+			assertEquals(expected, puzzles.map(Puzzles::format).collect(Collectors.toList()));
+		}
+	}
+
+	public void testParallelStreamMatchesSequential() throws Exception {
+		try (Stream<int[][]> puzzles = PuzzleStreams.puzzles(file)) {
+			assertEquals(expected, puzzles.parallel().map(Puzzles::format)
+					.collect(Collectors.toList()));
+		}
+	}
+
+	public void testSmallWindowsAreRemapped() throws Exception {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+			// Windows that end in the middle of lines.
+			PuzzleSpliterator spliterator = new PuzzleSpliterator(channel, 0,
+					channel.size(), 1000);
+			List<String> lines = StreamSupport.stream(spliterator, true)
+					.map(Puzzles::format).collect(Collectors.toList());
+			assertEquals(expected, lines);
+		}
+	}
+}
@@ -0,0 +1,55 @@
+package org.wintrisstech.sudoku;
+
+import junit.framework.TestCase;
+
+public class SatSolverTest extends TestCase {
+
+	private SatSolver solver = new SatSolver();
+
+	public void testSolvingAllPuzzles() throws Exception {
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			int[][] puzzle = Puzzles.getPuzzle(i);
+			assertTrue(solver.solve(puzzle));
+			SolverTest.assertEquals(PuzzleSolutions.getSolution(i), puzzle);
+		}
+	}
+
+	public void testProvingThatAPuzzleHasNoSolution() throws Exception {
+		int[][] puzzle = Puzzles.copy(Puzzles.PUZZLE_4);
+		assertFalse(solver.solve(puzzle));
+		SolverTest.assertEquals(Puzzles.PUZZLE_4, puzzle);
+	}
+
+	public void testRejectingOutOfRangeClues() throws Exception {
+		// At the first, middle and last spaces, where a bad value used to
+		// index out of bounds, be solved over, or spill into the next space.
+		int[] spaces = { 0, 40, 80, 4 };
+		int[] values = { -1, 10, 12 };
+		for (int space : spaces) {
+			for (int value : values) {
+				int[][] puzzle = Puzzles.getPuzzle(1);
+				puzzle[space / 9][space % 9] = value;
+				int[][] original = Puzzles.copy(puzzle);
+				assertFalse("Value " + value + " at space " + space, solver.solve(puzzle));
+				SolverTest.assertEquals(original, puzzle);
+			}
+		}
+		// The solver still works afterwards.
+		int[][] puzzle = Puzzles.getPuzzle(1);
+		assertTrue(solver.solve(puzzle));
+		SolverTest.assertEquals(PuzzleSolutions.getSolution(1), puzzle);
+	}
+
+	public void testPortfolioRoutesToSatWhenBudgetIsExhausted() throws Exception {
+		// A hard puzzle that needs more than a handful of nodes.
+		int[][] puzzle = Puzzles.parse("8..........36......7..9.2...5...7.......457.....1...3...1....68..85...1..9....4..");
+		PortfolioSolver portfolio = new PortfolioSolver(1);
+		assertTrue(portfolio.solve(puzzle));
+		assertTrue(portfolio.wasRoutedToSat());
+		assertTrue(PackedGrid.of(puzzle).isSolved());
+
+		portfolio = new PortfolioSolver();
+		assertTrue(portfolio.solve(Puzzles.getPuzzle(0)));
+		assertFalse(portfolio.wasRoutedToSat());
+	}
+}
@@ -0,0 +1,78 @@
+package org.wintrisstech.sudoku;
+
+import java.io.File;
+import java.nio.file.Path;
+
+import junit.framework.TestCase;
+
+public class SearchTraceTest extends TestCase {
+
+	private Path file;
+
+	@Override
+	protected void setUp() throws Exception {
+		file = File.createTempFile("search", ".trace").toPath();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		file.toFile().delete();
+	}
+
+	public void testReplayRebuildsTheNodesOfTheSearch() throws Exception {
+		Solver solver = new Solver();
+		solver.setSeed(42);
+		// A small ring, so the solver has to wait for the flusher.
+		SearchTrace trace = SearchTrace.open(file, 64);
+		solver.setTrace(trace);
+		long nodes = 0;
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			assertTrue(solver.solve(Puzzles.getPuzzle(i)));
+			nodes += solver.getNodes();
+		}
+		trace.close();
+
+		TraceReplay replay = new TraceReplay();
+		replay.replay(file);
+		long[] perDepth = replay.getNodes();
+		assertEquals(Puzzles.ALL_PUZZLES.length, perDepth[0]);
+		long replayed = 0;
+		for (int d = 1; d < perDepth.length; d++) {
+			replayed += perDepth[d];
+		}
+		assertEquals(nodes, replayed);
+	}
+
+	public void testTheTracedSeedReproducesASearchAlone() throws Exception {
+		Solver solver = new Solver();
+		SearchTrace trace = SearchTrace.open(file);
+		solver.setTrace(trace);
+		long[] seeds = new long[Puzzles.ALL_PUZZLES.length];
+		for (int i = 0; i < Puzzles.ALL_PUZZLES.length; i++) {
+			assertTrue(solver.solve(Puzzles.getPuzzle(i)));
+			seeds[i] = solver.getSeed();
+		}
+		trace.close();
+
+		TraceReplay replay = new TraceReplay();
+		replay.replay(file);
+		assertTrue(java.util.Arrays.equals(seeds, replay.getSeeds()));
+		long[] nodes = replay.getSearchNodes();
+		for (int i = Puzzles.ALL_PUZZLES.length - 1; i >= 0; i--) {
+			Solver alone = new Solver();
+			alone.setSeed(seeds[i]);
+			assertTrue(alone.solve(Puzzles.getPuzzle(i)));
+			assertEquals(nodes[i], alone.getNodes());
+		}
+	}
+
+	public void testTheSeedReproducesTheSearch() throws Exception {
+		Solver solver = new Solver();
+		solver.setSeed(7);
+		solver.solve(Puzzles.getPuzzle(1));
+		long nodes = solver.getNodes();
+		solver.setSeed(7);
+		solver.solve(Puzzles.getPuzzle(1));
+		assertEquals(nodes, solver.getNodes());
+	}
+}
@@ -0,0 +1,148 @@
+package org.wintrisstech.sudoku;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import junit.framework.TestCase;
+
+public class SolutionStoreTest extends TestCase {
+
+	private Path directory;
+	private SolutionStore store;
+
+	@Override
+	protected void setUp() throws Exception {
+		directory = Files.createTempDirectory("store");
+		store = SolutionStore.open(directory);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (store != null) {
+			store.close();
+		}
+		for (File file : directory.toFile().listFiles()) {
+			file.delete();
+		}
+		Files.delete(directory);
+	}
+
+	public void testPutAndGet() throws Exception {
+		assertNull(store.get(Puzzles.PUZZLE_1));
+		assertTrue(store.put(Puzzles.PUZZLE_1, PuzzleSolutions.PUZZLE_1_SOLUTION));
+		assertFalse(store.put(Puzzles.PUZZLE_1, PuzzleSolutions.PUZZLE_1_SOLUTION));
+		assertEquals(1, store.size());
+		SolverTest.assertEquals(PuzzleSolutions.PUZZLE_1_SOLUTION, store.get(Puzzles.PUZZLE_1));
+		assertNull(store.get(Puzzles.PUZZLE_2));
+	}
+
+	public void testReopen() throws Exception {
+		putAll(0, 10);
+		reopen();
+		assertEquals(10, store.size());
+		assertAll(0, 10);
+	}
+
+	public void testTruncatedLastRecordIsDropped() throws Exception {
+		putAll(0, 3);
+		store.close();
+		store = null;
+		// Half a record, as left by a crash in the middle of a write.
+		Files.write(directory.resolve("solutions.dat"), new byte[41],
+				StandardOpenOption.APPEND);
+		reopen();
+		assertEquals(3, store.size());
+		assertAll(0, 3);
+		putAll(3, 4);
+		reopen();
+		assertEquals(4, store.size());
+		assertAll(0, 4);
+	}
+
+	public void testDeletedIndexIsRebuilt() throws Exception {
+		putAll(0, 10);
+		store.close();
+		store = null;
+		Files.delete(directory.resolve("solutions.idx"));
+		reopen();
+		assertEquals(10, store.size());
+		assertAll(0, 10);
+	}
+
+	public void testIndexThatIsBehindCatchesUp() throws Exception {
+		putAll(0, 5);
+		store.close();
+		store = null;
+		Path index = directory.resolve("solutions.idx");
+		Path old = directory.resolve("old.idx");
+		Files.copy(index, old);
+		reopen();
+		putAll(5, 10);
+		store.close();
+		store = null;
+		Files.move(old, index, StandardCopyOption.REPLACE_EXISTING);
+		reopen();
+		assertEquals(10, store.size());
+		assertAll(0, 10);
+	}
+
+	public void testIndexGrowsWhenThreeQuartersFull() throws Exception {
+		long initialSize = Files.size(directory.resolve("solutions.idx"));
+		putAll(0, 1000); // the smallest index holds 768
+		assertTrue(Files.size(directory.resolve("solutions.idx")) > initialSize);
+		assertAll(0, 1000);
+		reopen();
+		assertEquals(1000, store.size());
+		assertAll(0, 1000);
+	}
+
+	public void testStoreCanOnlyBeOpenedOnce() throws Exception {
+		try {
+			SolutionStore.open(directory).close();
+			fail("Opened a store twice");
+		} catch (IOException expected) {
+		}
+		reopen();
+	}
+
+	private void reopen() throws IOException {
+		if (store != null) {
+			store.close();
+		}
+		store = SolutionStore.open(directory);
+	}
+
+	private void putAll(int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			assertTrue(store.put(puzzle(i), PuzzleSolutions.PUZZLE_1_SOLUTION));
+		}
+	}
+
+	private void assertAll(int from, int to) throws IOException {
+		for (int i = from; i < to; i++) {
+			SolverTest.assertEquals(PuzzleSolutions.PUZZLE_1_SOLUTION, store.get(puzzle(i)));
+		}
+		assertNull(store.get(puzzle(to)));
+	}
+
+	/**
+	 * Gets a distinct puzzle for each number: the solution of PUZZLE_1 with
+	 * two spaces emptied.
+	 */
+	private static int[][] puzzle(int number) {
+		int[][] puzzle = Puzzles.copy(PuzzleSolutions.PUZZLE_1_SOLUTION);
+		int first = 0;
+		while (number >= 80 - first) {
+			number -= 80 - first;
+			first++;
+		}
+		int second = first + 1 + number;
+		puzzle[first / 9][first % 9] = 0;
+		puzzle[second / 9][second % 9] = 0;
+		return puzzle;
+	}
+}
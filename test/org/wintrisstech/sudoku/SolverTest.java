@@ -26,6 +26,20 @@ public class SolverTest extends TestCase {
 		}
 	}
 
+	public void testRejectingConflictingClues() throws Exception {
+		// Two 5s in row 0.
+		int[][] puzzle = Puzzles.parse("5576314923218496579642578132457983616395142787183265494921637851734859268569721..");
+		int[][] original = Puzzles.copy(puzzle);
+		assertFalse(solver.solve(puzzle));
+		assertEquals(original, puzzle);
+
+		puzzle = Puzzles.getPuzzle(1);
+		puzzle[0][0] = 10;
+		assertFalse(solver.solve(puzzle));
+		puzzle[0][0] = -1;
+		assertFalse(solver.solve(puzzle));
+	}
+
 	/**
 	 * This method waits until either the solver is done or the timeout is
 	 * reached
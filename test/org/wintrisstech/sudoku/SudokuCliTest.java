@@ -0,0 +1,50 @@
+package org.wintrisstech.sudoku;
+
+import java.io.BufferedReader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+
+import junit.framework.TestCase;
+
+public class SudokuCliTest extends TestCase {
+
+	private static final String INPUT = "# a comment\n\n"
+			+ Puzzles.format(Puzzles.PUZZLE_1) + "\n"
+			+ Puzzles.format(Puzzles.PUZZLE_4) + "\n" + "123\n";
+
+	private static final String OUTPUT = Puzzles.format(PuzzleSolutions.PUZZLE_1_SOLUTION)
+			+ "\nunsolvable\nerror Expected 81 spaces, found 3: 123\n";
+
+	public void testAnsweringEachPuzzleWithALine() throws Exception {
+		StringWriter out = new StringWriter();
+		new SudokuCli("portfolio", null).answerAll(new BufferedReader(
+				new StringReader(INPUT)), out, false);
+		assertEquals(OUTPUT, out.toString());
+	}
+
+	public void testDaemonAnswersClientsUntilStopped() throws Exception {
+		SudokuCli cli = new SudokuCli("inference", null);
+		try (ServerSocket server = new ServerSocket(0, 50,
+				InetAddress.getLoopbackAddress())) {
+			Thread daemon = new Thread(() -> {
+				try {
+					cli.serve(server);
+				} catch (Exception ex) {
+					fail(ex.toString());
+				}
+			});
+			daemon.start();
+			for (int i = 0; i < 2; i++) {
+				StringWriter out = new StringWriter();
+				SudokuCli.client(server.getLocalPort(), new StringReader(INPUT), out);
+				assertEquals(OUTPUT, out.toString());
+			}
+			SudokuCli.client(server.getLocalPort(), new StringReader("!stop\n"),
+					new StringWriter());
+			daemon.join(5000);
+			assertFalse(daemon.isAlive());
+		}
+	}
+}